@@ -57,6 +57,15 @@ public class MetricsExamples {
     ));
   }
 
+  public void setupExporter() {
+    Vertx vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(
+        new DropwizardMetricsOptions().
+            setExporterEnabled(true).
+            setExporterPort(9090).
+            setExporterPath("/metrics")
+    ));
+  }
+
   public void setupMonitoredHandlers() {
     Vertx vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(
         new DropwizardMetricsOptions().
@@ -61,6 +61,76 @@ public class DropwizardMetricsOptions extends MetricsOptions {
    */
   public static final List<Match> DEFAULT_MONITORED_HTTP_CLIENT_ENDPOINTS = Collections.emptyList();
 
+  /**
+   * The default maximum number of series per metric = 1000
+   */
+  public static final int DEFAULT_MAX_SERIES_PER_METRIC = 1000;
+
+  /**
+   * The default value of aggregating bytes per connection = false
+   */
+  public static final boolean DEFAULT_AGGREGATE_BYTES_PER_CONNECTION = false;
+
+  /**
+   * The default value of collapsing the addresses shaped like reply addresses = false
+   */
+  public static final boolean DEFAULT_COLLAPSE_REPLY_SHAPED_ADDRESSES = false;
+
+  /**
+   * The default strategy of the remote label of server connections = ADDRESS
+   */
+  public static final RemoteLabelStrategy DEFAULT_REMOTE_LABEL_STRATEGY = RemoteLabelStrategy.ADDRESS;
+
+  /**
+   * The default prefix length of IPv4 networks for the CIDR remote label strategy = 24
+   */
+  public static final int DEFAULT_REMOTE_LABEL_CIDR_PREFIX = 24;
+
+  /**
+   * The default number of hosts reported by the TOP_K remote label strategy = 10
+   */
+  public static final int DEFAULT_REMOTE_LABEL_TOP_K = 10;
+
+  /**
+   * The default time to live of idle series, in milliseconds = 0 (never expire)
+   */
+  public static final long DEFAULT_SERIES_TTL = 0;
+
+  /**
+   * The default interval of the event loop lag probe, in milliseconds = 0 (disabled)
+   */
+  public static final long DEFAULT_EVENT_LOOP_LAG_PROBE_INTERVAL = 0;
+
+  /**
+   * The default interval of the thread utilization sampling, in milliseconds = 0 (disabled)
+   */
+  public static final long DEFAULT_THREAD_UTILIZATION_INTERVAL = 0;
+
+  /**
+   * The default value of the embedded Prometheus exporter enabled = false
+   */
+  public static final boolean DEFAULT_EXPORTER_ENABLED = false;
+
+  /**
+   * The default host of the embedded Prometheus exporter = 0.0.0.0
+   */
+  public static final String DEFAULT_EXPORTER_HOST = "0.0.0.0";
+
+  /**
+   * The default port of the embedded Prometheus exporter = 9090
+   */
+  public static final int DEFAULT_EXPORTER_PORT = 9090;
+
+  /**
+   * The default path of the embedded Prometheus exporter = /metrics
+   */
+  public static final String DEFAULT_EXPORTER_PATH = "/metrics";
+
+  /**
+   * The default max age of the scrape cached by the exporter, in milliseconds = 0 (no cache)
+   */
+  public static final long DEFAULT_EXPORTER_CACHE_MAX_AGE = 0;
+
   private String registryName;
   private boolean jmxEnabled;
   private String jmxDomain;
@@ -70,6 +140,20 @@ public class DropwizardMetricsOptions extends MetricsOptions {
   private List<Match> monitoredHttpClientEndpoints;
   private String configPath;
   private String baseName;
+  private int maxSeriesPerMetric;
+  private boolean aggregateBytesPerConnection;
+  private boolean collapseReplyShapedAddresses;
+  private RemoteLabelStrategy remoteLabelStrategy;
+  private int remoteLabelCidrPrefix;
+  private int remoteLabelTopK;
+  private long seriesTtl;
+  private long eventLoopLagProbeInterval;
+  private long threadUtilizationInterval;
+  private boolean exporterEnabled;
+  private String exporterHost;
+  private int exporterPort;
+  private String exporterPath;
+  private long exporterCacheMaxAge;
 
   /**
    * Default constructor
@@ -80,6 +164,20 @@ public class DropwizardMetricsOptions extends MetricsOptions {
     monitoredHttpServerUris = new ArrayList<>(DEFAULT_MONITORED_HTTP_SERVER_URIS);
     monitoredHttpClientUris = new ArrayList<>(DEFAULT_MONITORED_HTTP_CLIENT_URIS);
     monitoredHttpClientEndpoints = new ArrayList<>(DEFAULT_MONITORED_HTTP_CLIENT_ENDPOINTS);
+    maxSeriesPerMetric = DEFAULT_MAX_SERIES_PER_METRIC;
+    aggregateBytesPerConnection = DEFAULT_AGGREGATE_BYTES_PER_CONNECTION;
+    collapseReplyShapedAddresses = DEFAULT_COLLAPSE_REPLY_SHAPED_ADDRESSES;
+    remoteLabelStrategy = DEFAULT_REMOTE_LABEL_STRATEGY;
+    remoteLabelCidrPrefix = DEFAULT_REMOTE_LABEL_CIDR_PREFIX;
+    remoteLabelTopK = DEFAULT_REMOTE_LABEL_TOP_K;
+    seriesTtl = DEFAULT_SERIES_TTL;
+    eventLoopLagProbeInterval = DEFAULT_EVENT_LOOP_LAG_PROBE_INTERVAL;
+    threadUtilizationInterval = DEFAULT_THREAD_UTILIZATION_INTERVAL;
+    exporterEnabled = DEFAULT_EXPORTER_ENABLED;
+    exporterHost = DEFAULT_EXPORTER_HOST;
+    exporterPort = DEFAULT_EXPORTER_PORT;
+    exporterPath = DEFAULT_EXPORTER_PATH;
+    exporterCacheMaxAge = DEFAULT_EXPORTER_CACHE_MAX_AGE;
   }
 
   /**
@@ -94,6 +192,20 @@ public class DropwizardMetricsOptions extends MetricsOptions {
     monitoredHttpServerUris = new ArrayList<>(DEFAULT_MONITORED_HTTP_SERVER_URIS);
     monitoredHttpClientUris = new ArrayList<>(DEFAULT_MONITORED_HTTP_CLIENT_URIS);
     monitoredHttpClientEndpoints = new ArrayList<>(DEFAULT_MONITORED_HTTP_CLIENT_ENDPOINTS);
+    maxSeriesPerMetric = DEFAULT_MAX_SERIES_PER_METRIC;
+    aggregateBytesPerConnection = DEFAULT_AGGREGATE_BYTES_PER_CONNECTION;
+    collapseReplyShapedAddresses = DEFAULT_COLLAPSE_REPLY_SHAPED_ADDRESSES;
+    remoteLabelStrategy = DEFAULT_REMOTE_LABEL_STRATEGY;
+    remoteLabelCidrPrefix = DEFAULT_REMOTE_LABEL_CIDR_PREFIX;
+    remoteLabelTopK = DEFAULT_REMOTE_LABEL_TOP_K;
+    seriesTtl = DEFAULT_SERIES_TTL;
+    eventLoopLagProbeInterval = DEFAULT_EVENT_LOOP_LAG_PROBE_INTERVAL;
+    threadUtilizationInterval = DEFAULT_THREAD_UTILIZATION_INTERVAL;
+    exporterEnabled = DEFAULT_EXPORTER_ENABLED;
+    exporterHost = DEFAULT_EXPORTER_HOST;
+    exporterPort = DEFAULT_EXPORTER_PORT;
+    exporterPath = DEFAULT_EXPORTER_PATH;
+    exporterCacheMaxAge = DEFAULT_EXPORTER_CACHE_MAX_AGE;
   }
 
   /**
@@ -111,6 +223,20 @@ public class DropwizardMetricsOptions extends MetricsOptions {
     monitoredHttpServerUris = new ArrayList<>(other.monitoredHttpServerUris);
     monitoredHttpClientUris = new ArrayList<>(other.monitoredHttpClientUris);
     monitoredHttpClientEndpoints = new ArrayList<>(other.monitoredHttpClientEndpoints);
+    maxSeriesPerMetric = other.getMaxSeriesPerMetric();
+    aggregateBytesPerConnection = other.isAggregateBytesPerConnection();
+    collapseReplyShapedAddresses = other.isCollapseReplyShapedAddresses();
+    remoteLabelStrategy = other.getRemoteLabelStrategy();
+    remoteLabelCidrPrefix = other.getRemoteLabelCidrPrefix();
+    remoteLabelTopK = other.getRemoteLabelTopK();
+    seriesTtl = other.getSeriesTtl();
+    eventLoopLagProbeInterval = other.getEventLoopLagProbeInterval();
+    threadUtilizationInterval = other.getThreadUtilizationInterval();
+    exporterEnabled = other.isExporterEnabled();
+    exporterHost = other.getExporterHost();
+    exporterPort = other.getExporterPort();
+    exporterPath = other.getExporterPath();
+    exporterCacheMaxAge = other.getExporterCacheMaxAge();
   }
 
   /**
@@ -148,6 +274,20 @@ public class DropwizardMetricsOptions extends MetricsOptions {
     } else {
       monitoredHttpClientEndpoints = loadMonitored("monitoredHttpClientEndpoints", json);
     }
+    maxSeriesPerMetric = json.getInteger("maxSeriesPerMetric", DEFAULT_MAX_SERIES_PER_METRIC);
+    aggregateBytesPerConnection = json.getBoolean("aggregateBytesPerConnection", DEFAULT_AGGREGATE_BYTES_PER_CONNECTION);
+    collapseReplyShapedAddresses = json.getBoolean("collapseReplyShapedAddresses", DEFAULT_COLLAPSE_REPLY_SHAPED_ADDRESSES);
+    remoteLabelStrategy = RemoteLabelStrategy.valueOf(json.getString("remoteLabelStrategy", DEFAULT_REMOTE_LABEL_STRATEGY.name()));
+    remoteLabelCidrPrefix = json.getInteger("remoteLabelCidrPrefix", DEFAULT_REMOTE_LABEL_CIDR_PREFIX);
+    remoteLabelTopK = json.getInteger("remoteLabelTopK", DEFAULT_REMOTE_LABEL_TOP_K);
+    seriesTtl = json.getLong("seriesTtl", DEFAULT_SERIES_TTL);
+    eventLoopLagProbeInterval = json.getLong("eventLoopLagProbeInterval", DEFAULT_EVENT_LOOP_LAG_PROBE_INTERVAL);
+    threadUtilizationInterval = json.getLong("threadUtilizationInterval", DEFAULT_THREAD_UTILIZATION_INTERVAL);
+    exporterEnabled = json.getBoolean("exporterEnabled", DEFAULT_EXPORTER_ENABLED);
+    exporterHost = json.getString("exporterHost", DEFAULT_EXPORTER_HOST);
+    exporterPort = json.getInteger("exporterPort", DEFAULT_EXPORTER_PORT);
+    exporterPath = json.getString("exporterPath", DEFAULT_EXPORTER_PATH);
+    exporterCacheMaxAge = json.getLong("exporterCacheMaxAge", DEFAULT_EXPORTER_CACHE_MAX_AGE);
   }
 
   private List<Match> loadMonitored(String arrayField, JsonObject json) {
@@ -338,4 +478,300 @@ public class DropwizardMetricsOptions extends MetricsOptions {
   public String getBaseName() {
     return baseName;
   }
+
+  /**
+   * @return the maximum number of series per metric
+   */
+  public int getMaxSeriesPerMetric() {
+    return maxSeriesPerMetric;
+  }
+
+  /**
+   * Set the maximum number of series (i.e. distinct label values combinations) a metric can have. Once reached,
+   * new series of this metric are aggregated in a single series whose label values are {@code overflow}.
+   * A value lower or equal to zero removes the limit.
+   *
+   * @param maxSeriesPerMetric the maximum number of series
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setMaxSeriesPerMetric(int maxSeriesPerMetric) {
+    this.maxSeriesPerMetric = maxSeriesPerMetric;
+    return this;
+  }
+
+  /**
+   * Are the bytes read and written by TCP connections aggregated per connection?
+   *
+   * @return true if aggregated, false if observed on every read and write
+   */
+  public boolean isAggregateBytesPerConnection() {
+    return aggregateBytesPerConnection;
+  }
+
+  /**
+   * Set whether the bytes read and written by TCP connections are aggregated per connection. When enabled, the bytes
+   * histograms observe the total bytes of each connection once it is closed rather than every read and write, and
+   * {@code bytes_read_total} and {@code bytes_written_total} counters are updated when connections are closed.
+   *
+   * @param aggregateBytesPerConnection true to aggregate the bytes per connection
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setAggregateBytesPerConnection(boolean aggregateBytesPerConnection) {
+    this.aggregateBytesPerConnection = aggregateBytesPerConnection;
+    return this;
+  }
+
+  /**
+   * Are the event bus addresses shaped like reply addresses reported as {@code __reply__}?
+   *
+   * @return true if collapsed, false if only the addresses of registered reply handlers are
+   */
+  public boolean isCollapseReplyShapedAddresses() {
+    return collapseReplyShapedAddresses;
+  }
+
+  /**
+   * Set whether the event bus addresses shaped like the reply addresses Vert.x generates, a number or a UUID, are
+   * reported as {@code __reply__}. The addresses of the reply handlers registered on this Vert.x instance are always
+   * reported as {@code __reply__}, this also covers the replies sent to the reply handlers of other cluster nodes.
+   * Ordinary addresses having the same shape are reported as {@code __reply__} too.
+   *
+   * @param collapseReplyShapedAddresses true to collapse the addresses shaped like reply addresses
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setCollapseReplyShapedAddresses(boolean collapseReplyShapedAddresses) {
+    this.collapseReplyShapedAddresses = collapseReplyShapedAddresses;
+    return this;
+  }
+
+  /**
+   * Get how the {@code remote} label of server connections metrics is computed.
+   *
+   * @return the remote label strategy
+   */
+  public RemoteLabelStrategy getRemoteLabelStrategy() {
+    return remoteLabelStrategy;
+  }
+
+  /**
+   * Set how the {@code remote} label of server connections metrics is computed. Whatever the strategy, the
+   * {@code connections} gauge child of a remote is removed once its last connection is closed, while its bytes and
+   * exceptions children are kept until they expire after the {@link #setSeriesTtl(long) series TTL}.
+   *
+   * @param remoteLabelStrategy the remote label strategy
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setRemoteLabelStrategy(RemoteLabelStrategy remoteLabelStrategy) {
+    this.remoteLabelStrategy = remoteLabelStrategy;
+    return this;
+  }
+
+  /**
+   * Get the prefix length of the IPv4 networks used by the {@code CIDR} remote label strategy.
+   *
+   * @return the prefix length
+   */
+  public int getRemoteLabelCidrPrefix() {
+    return remoteLabelCidrPrefix;
+  }
+
+  /**
+   * Set the prefix length of the IPv4 networks used by the {@code CIDR} remote label strategy. IPv6 addresses are
+   * reported by /64 networks.
+   *
+   * @param remoteLabelCidrPrefix the prefix length, between 0 and 32
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setRemoteLabelCidrPrefix(int remoteLabelCidrPrefix) {
+    this.remoteLabelCidrPrefix = remoteLabelCidrPrefix;
+    return this;
+  }
+
+  /**
+   * Get the number of hosts reported by the {@code TOP_K} remote label strategy.
+   *
+   * @return the number of hosts
+   */
+  public int getRemoteLabelTopK() {
+    return remoteLabelTopK;
+  }
+
+  /**
+   * Set the number of hosts reported by the {@code TOP_K} remote label strategy: the hosts opening the most connections
+   * are reported, the others are reported as {@code other}. The reported hosts are recomputed every 10 seconds, among
+   * the hosts having opened at least 10 connections, so that clients opening a few connections each are always
+   * reported as {@code other}.
+   *
+   * @param remoteLabelTopK the number of hosts
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setRemoteLabelTopK(int remoteLabelTopK) {
+    this.remoteLabelTopK = remoteLabelTopK;
+    return this;
+  }
+
+  /**
+   * Get the time to live of idle series, in milliseconds.
+   *
+   * @return the time to live of idle series
+   */
+  public long getSeriesTtl() {
+    return seriesTtl;
+  }
+
+  /**
+   * Set the time to live of idle series, in milliseconds. A labelled series whose value has not changed for longer than
+   * this is removed, gauges only when their value is zero. Series are checked periodically, every half time to live
+   * but not more often than once per second. A value of {@code 0} or less keeps series forever.
+   *
+   * @param seriesTtl the time to live of idle series, in milliseconds
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setSeriesTtl(long seriesTtl) {
+    this.seriesTtl = seriesTtl;
+    return this;
+  }
+
+  /**
+   * Get the interval of the event loop lag probe, in milliseconds.
+   *
+   * @return the interval of the event loop lag probe
+   */
+  public long getEventLoopLagProbeInterval() {
+    return eventLoopLagProbeInterval;
+  }
+
+  /**
+   * Set the interval of the event loop lag probe, in milliseconds. When positive, a task is scheduled on each event
+   * loop at this interval and the delay between its scheduled and actual execution is reported per event loop, see
+   * {@code event_loop_lag}. A value of {@code 0} or less disables the probe.
+   *
+   * @param eventLoopLagProbeInterval the interval of the probe, in milliseconds
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setEventLoopLagProbeInterval(long eventLoopLagProbeInterval) {
+    this.eventLoopLagProbeInterval = eventLoopLagProbeInterval;
+    return this;
+  }
+
+  /**
+   * Get the interval of the thread utilization sampling, in milliseconds.
+   *
+   * @return the interval of the thread utilization sampling
+   */
+  public long getThreadUtilizationInterval() {
+    return threadUtilizationInterval;
+  }
+
+  /**
+   * Set the interval of the thread utilization sampling, in milliseconds. When positive, the CPU time of the event loop
+   * and worker threads is read at this interval and reported per thread, along with the ratio of the interval the
+   * thread was busy. A value of {@code 0} or less disables the sampling.
+   *
+   * @param threadUtilizationInterval the interval of the sampling, in milliseconds
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setThreadUtilizationInterval(long threadUtilizationInterval) {
+    this.threadUtilizationInterval = threadUtilizationInterval;
+    return this;
+  }
+
+  /**
+   * Will the embedded Prometheus exporter be started?
+   *
+   * @return true if enabled, false if not.
+   */
+  public boolean isExporterEnabled() {
+    return exporterEnabled;
+  }
+
+  /**
+   * Set whether an embedded HTTP server exposing the metrics in the Prometheus text format will be started.
+   *
+   * @param exporterEnabled true to start the exporter, false otherwise
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setExporterEnabled(boolean exporterEnabled) {
+    this.exporterEnabled = exporterEnabled;
+    if (exporterEnabled) {
+      setEnabled(true);
+    }
+    return this;
+  }
+
+  /**
+   * @return the host the embedded Prometheus exporter binds to
+   */
+  public String getExporterHost() {
+    return exporterHost;
+  }
+
+  /**
+   * Set the host the embedded Prometheus exporter binds to.
+   *
+   * @param exporterHost the host
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setExporterHost(String exporterHost) {
+    this.exporterHost = exporterHost;
+    return this;
+  }
+
+  /**
+   * @return the port the embedded Prometheus exporter listens on
+   */
+  public int getExporterPort() {
+    return exporterPort;
+  }
+
+  /**
+   * Set the port the embedded Prometheus exporter listens on.
+   *
+   * @param exporterPort the port
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setExporterPort(int exporterPort) {
+    this.exporterPort = exporterPort;
+    return this;
+  }
+
+  /**
+   * @return the path of the embedded Prometheus exporter scrape endpoint
+   */
+  public String getExporterPath() {
+    return exporterPath;
+  }
+
+  /**
+   * Set the path of the embedded Prometheus exporter scrape endpoint.
+   *
+   * @param exporterPath the path
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setExporterPath(String exporterPath) {
+    this.exporterPath = exporterPath;
+    return this;
+  }
+
+  /**
+   * Get the max age of the scrape cached by the exporter, in milliseconds.
+   *
+   * @return the max age of the cached scrape
+   */
+  public long getExporterCacheMaxAge() {
+    return exporterCacheMaxAge;
+  }
+
+  /**
+   * Set the max age of the scrape cached by the exporter, in milliseconds. Scrapes arriving within this delay after a
+   * collection are answered with its encoded payload. Concurrent scrapes always share the collection in progress. A
+   * value of {@code 0} or less disables the cache.
+   *
+   * @param exporterCacheMaxAge the max age of the cached scrape, in milliseconds
+   * @return a reference to this, so the API can be used fluently
+   */
+  public DropwizardMetricsOptions setExporterCacheMaxAge(long exporterCacheMaxAge) {
+    this.exporterCacheMaxAge = exporterCacheMaxAge;
+    return this;
+  }
 }
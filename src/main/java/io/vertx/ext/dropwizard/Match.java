@@ -93,7 +93,8 @@ public class Match {
 
   /**
    * Set the alias the human readable name that will be used as a part of
-   * registry entry name when the value matches.
+   * registry entry name when the value matches. Without alias, the matched value
+   * is used for {@link MatchType#EQUALS} and the regular expression for {@link MatchType#REGEX}.
    *
    * @param alias the matcher alias
    * @return a reference to this, so the API can be used fluently
@@ -0,0 +1,35 @@
+package io.vertx.ext.dropwizard;
+
+/**
+ * How the {@code remote} label of server connections metrics is computed from the remote address.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public enum RemoteLabelStrategy {
+
+  /**
+   * The remote host and port, as in {@code 10.0.0.1:54321}: a new series per connection since the port is ephemeral.
+   */
+  ADDRESS,
+
+  /**
+   * The remote host only.
+   */
+  HOST,
+
+  /**
+   * The network of the remote host, as in {@code 10.0.0.0/24}.
+   */
+  CIDR,
+
+  /**
+   * The remote host for the hosts opening the most connections, recomputed periodically, {@code other} for the rest.
+   */
+  TOP_K,
+
+  /**
+   * An empty value, which Prometheus considers the same as no label.
+   */
+  NONE
+
+}
@@ -24,7 +24,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
@@ -34,6 +33,7 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.metrics.Measured;
 import io.vertx.core.spi.metrics.Metrics;
 import io.vertx.core.spi.metrics.MetricsProvider;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
  * Base Codahale metrics object.
@@ -51,15 +51,24 @@ public abstract class AbstractMetrics implements Metrics {
     return null;
   }
 
-  private final ConcurrentMap<String, Collector> collectors = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Family<?>> collectors = new ConcurrentHashMap<>();
   private final LinkedHashMap<String, String> globalLabels; // order matters
+  private final String[] globalValues;
   private final CollectorRegistry registry;
+  private final CollectorCache collectorCache;
   private final String baseName;
+  protected final DropwizardMetricsOptions options;
+  private volatile SeriesSweeper sweeper;
+  // Replaced by the tests before any measure
+  Clock clock = Clock.SYSTEM;
 
-  AbstractMetrics(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels) {
+  AbstractMetrics(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels, DropwizardMetricsOptions options) {
     this.registry = registry;
+    this.collectorCache = VertxMetricsFactoryImpl.collectorCache(registry);
     this.baseName = baseName;
     this.globalLabels = globalLabels;
+    this.globalValues = globalLabels.values().toArray(new String[globalLabels.size()]);
+    this.options = options;
   }
 
   /**
@@ -75,7 +84,7 @@ public abstract class AbstractMetrics implements Metrics {
         filter(e -> e.getKey().startsWith(baseName)).
         collect(Collectors.toMap(
             e -> projectName(e.getKey()),
-            e -> Helper.convertMetric(e.getValue(), TimeUnit.SECONDS, TimeUnit.MILLISECONDS)));
+            e -> Helper.convertMetric(e.getValue().collector(), TimeUnit.SECONDS, TimeUnit.MILLISECONDS)));
     return new JsonObject(map);
   }
 
@@ -110,39 +119,47 @@ public abstract class AbstractMetrics implements Metrics {
     return baseName + "_" + name;
   }
 
-  private Collector collector(Supplier<SimpleCollector.Builder> sup, String name, String... labels) {
+  @SuppressWarnings("unchecked")
+  private <C> Family<C> collector(Supplier<? extends SimpleCollector.Builder<?, ? extends SimpleCollector<C>>> sup, String name, String... labels) {
     String fullName = fullName(name);
-    final Collector collector;
-    if (labels.length > 0 || !globalLabels.isEmpty()) {
+    // Acquired once per metrics object, whatever the number of times it asks for it
+    return (Family<C>) collectors.computeIfAbsent(fullName, n -> {
       String[] allLabels = globalLabels.keySet().toArray(new String[labels.length + globalLabels.size()]);
       System.arraycopy(labels, 0, allLabels, globalLabels.size(), labels.length);
-      collector = sup.get().name(fullName).labelNames(allLabels).register(registry);
-    } else {
-      collector = sup.get().name(fullName).labelNames(labels).register(registry);
-    }
-    collectors.put(fullName, collector);
-    return collector;
+      return collectorCache.acquire(registry, sup, fullName, allLabels, globalValues, options.getMaxSeriesPerMetric());
+    });
   }
 
-  protected Gauge gauge(String name, String... labels) {
-    return (Gauge) collector(Gauge::build, name, labels);
+  protected Family<Gauge.Child> gauge(String name, String... labels) {
+    return collector(Gauge::build, name, labels);
   }
 
-  protected Counter counter(String name, String... labels) {
-    return (Counter) collector(Counter::build, name, labels);
+  protected Family<Counter.Child> counter(String name, String... labels) {
+    return collector(Counter::build, name, labels);
   }
 
-  protected Histogram histogram(String name, String... labels) {
-    return (Histogram) collector(Histogram::build, name, labels);
+  protected Family<Histogram.Child> histogram(String name, String... labels) {
+    return collector(Histogram::build, name, labels);
   }
 
-  protected <C> C labels(SimpleCollector<C> collector, String... labels) {
-    if (labels.length == 0 && globalLabels.isEmpty()) {
-      return collector.labels();
-    }
-    String[] allLabels = globalLabels.values().toArray(new String[labels.length + globalLabels.size()]);
-    System.arraycopy(labels, 0, allLabels, globalLabels.size(), labels.length);
-    return collector.labels(allLabels);
+  protected <C> C labels(Family<C> family) {
+    return family.labels();
+  }
+
+  protected <C> C labels(Family<C> family, String label) {
+    return family.labels(label);
+  }
+
+  protected <C> C labels(Family<C> family, String label1, String label2) {
+    return family.labels(label1, label2);
+  }
+
+  protected <C> C labels(Family<C> family, String label1, String label2, String label3) {
+    return family.labels(label1, label2, label3);
+  }
+
+  protected <C> C labels(Family<C> family, String... labels) {
+    return family.labels(labels);
   }
 
 //  protected Meter meter(String... names) {
@@ -177,17 +194,49 @@ public abstract class AbstractMetrics implements Metrics {
 //    }
 //  }
 
+  /**
+   * Let {@code sweeper} expire the idle series of this object, until it is closed.
+   */
+  void sweptBy(SeriesSweeper sweeper) {
+    this.sweeper = sweeper;
+    sweeper.add(this);
+  }
+
+  /**
+   * Remove the idle series of all the metrics of this object.
+   *
+   * @return the number of removed series
+   */
+  int expire(long now, long ttl) {
+    int removed = 0;
+    for (Family<?> family : collectors.values()) {
+      removed += family.expire(now, ttl, values -> isReferenced(family, values));
+    }
+    return removed;
+  }
+
+  /**
+   * Tells whether the children of {@code family} for some label values, global ones excluded, are held by objects
+   * still in use, in which case they must not expire whatever their idle time. None by default.
+   */
+  boolean isReferenced(Family<?> family, String[] values) {
+    return false;
+  }
+
   void remove(String name) {
-    Collector c = collectors.get(name);
-    if (c != null) {
-      registry.unregister(c);
-      collectors.remove(name);
+    Family<?> family = collectors.remove(name);
+    if (family != null) {
+      collectorCache.release(registry, family);
     }
   }
 
   void removeAll() {
-    // Remove only those in collectors, as the registry might be shared
-    collectors.forEach((name, c) -> registry.unregister(c));
+    SeriesSweeper sweeper = this.sweeper;
+    if (sweeper != null) {
+      sweeper.remove(this);
+    }
+    // Release only those in collectors, as the registry might be shared
+    collectors.forEach((name, family) -> collectorCache.release(registry, family));
     collectors.clear();
   }
 }
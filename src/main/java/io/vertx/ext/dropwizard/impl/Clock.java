@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+/**
+ * The source of the times durations are measured from, {@link System#nanoTime()} unless replaced by the tests to
+ * measure known durations.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+interface Clock {
+
+  Clock SYSTEM = System::nanoTime;
+
+  /**
+   * @return the current time, in nanoseconds
+   */
+  long nanoTime();
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SimpleCollector;
+
+/**
+ * The collectors registered in a {@link CollectorRegistry}, shared by all the metrics objects using it.
+ * <p>
+ * Several metrics objects can report to the same metric: the instances of a scaled server, servers listening on
+ * different addresses, or the endpoints of a client. A collector is registered once per name and label names, and
+ * unregistered when the last metrics object using it releases it. Metrics objects with the same global label values,
+ * like the instances of a scaled server, also share the same {@link Family} and therefore the same children, which
+ * are removed when its last user releases it.
+ * <p>
+ * The registered collectors are also indexed by name, so that a scrape asking for some families only collects those,
+ * see {@link #filteredMetricFamilySamples(CollectorRegistry, Collection, Collection)}.
+ * <p>
+ * The caches are kept in a weak map keyed by their registry, which they must therefore not reference: the registry is
+ * passed to each call instead.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class CollectorCache {
+
+  private final Map<List<String>, Entry> entries = new HashMap<>();
+  private final Map<SimpleCollector<?>, Entry> entriesByCollector = new IdentityHashMap<>();
+  // Read by the exporter without locking
+  private final ConcurrentNavigableMap<String, SimpleCollector<?>> index = new ConcurrentSkipListMap<>();
+
+  /**
+   * Get the family of the collector named {@code name} with {@code labelNames} for {@code globalValues}, registering
+   * the collector in {@code registry} if needed. Each call must be balanced with a call to
+   * {@link #release(CollectorRegistry, Family)}.
+   *
+   * @param registry the registry of this cache
+   * @param labelNames all the label names, global ones first
+   * @param globalValues the values of the global labels
+   */
+  @SuppressWarnings("unchecked")
+  synchronized <C> Family<C> acquire(CollectorRegistry registry,
+                                     Supplier<? extends SimpleCollector.Builder<?, ? extends SimpleCollector<C>>> sup,
+                                     String name, String[] labelNames, String[] globalValues, int maxSeries) {
+    List<String> key = new ArrayList<>(labelNames.length + 1);
+    key.add(name);
+    key.addAll(Arrays.asList(labelNames));
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      SimpleCollector<C> collector = sup.get().name(name).help(name).labelNames(labelNames).register(registry);
+      entry = new Entry(key, collector);
+      entries.put(key, entry);
+      entriesByCollector.put(collector, entry);
+      index.put(name, collector);
+    }
+    SimpleCollector<C> collector = (SimpleCollector<C>) entry.collector;
+    SharedFamily shared = entry.families.computeIfAbsent(Arrays.asList(globalValues),
+      values -> new SharedFamily(new Family<>(collector, name, globalValues, maxSeries)));
+    shared.refs++;
+    return (Family<C>) shared.family;
+  }
+
+  /**
+   * Release a family obtained from {@link #acquire}: its children are removed once it is released by all its users,
+   * and the collector is unregistered once all its families are.
+   */
+  synchronized void release(CollectorRegistry registry, Family<?> family) {
+    Entry entry = entriesByCollector.get(family.collector());
+    if (entry == null) {
+      // Cleared along with the registry
+      return;
+    }
+    List<String> globalValues = Arrays.asList(family.globalValues());
+    SharedFamily shared = entry.families.get(globalValues);
+    if (shared == null || shared.family != family || --shared.refs > 0) {
+      return;
+    }
+    entry.families.remove(globalValues);
+    if (entry.families.isEmpty()) {
+      entries.remove(entry.key);
+      entriesByCollector.remove(entry.collector);
+      index.remove(entry.key.get(0), entry.collector);
+      registry.unregister(entry.collector);
+    } else {
+      family.clear();
+    }
+  }
+
+  /**
+   * Forget all the collectors, once the registry has been cleared.
+   */
+  synchronized void clear() {
+    entries.clear();
+    entriesByCollector.clear();
+    index.clear();
+  }
+
+  /**
+   * Collect the families named {@code names} or whose name starts with one of {@code prefixes}. The collectors are
+   * resolved from the index, the others are not collected at all.
+   * <p>
+   * The names not found in the index, like those of the collectors registered directly in a shared registry or sample
+   * names like {@code <name>_count}, are resolved by {@link CollectorRegistry#filteredMetricFamilySamples(Set)}, which
+   * only keeps their samples with these names. Prefixes only select indexed families.
+   *
+   * @param registry the registry of this cache
+   * @return the selected families, the indexed ones first, sorted by name
+   */
+  Enumeration<MetricFamilySamples> filteredMetricFamilySamples(CollectorRegistry registry, Collection<String> names,
+                                                               Collection<String> prefixes) {
+    Map<String, Collector> selected = new TreeMap<>();
+    Set<String> unresolved = new HashSet<>();
+    for (String name : names) {
+      Collector collector = index.get(name);
+      if (collector != null) {
+        selected.put(name, collector);
+      } else {
+        unresolved.add(name);
+      }
+    }
+    for (String prefix : prefixes) {
+      // Metric names are ASCII
+      selected.putAll(index.subMap(prefix, prefix + Character.MAX_VALUE));
+    }
+    Enumeration<MetricFamilySamples> others = unresolved.isEmpty()
+      ? Collections.emptyEnumeration()
+      : registry.filteredMetricFamilySamples(unresolved);
+    return new SelectedFamilies(selected, others);
+  }
+
+  private static class Entry {
+
+    private final List<String> key;
+    private final SimpleCollector<?> collector;
+    private final Map<List<String>, SharedFamily> families = new HashMap<>();
+
+    private Entry(List<String> key, SimpleCollector<?> collector) {
+      this.key = key;
+      this.collector = collector;
+    }
+  }
+
+  /**
+   * Collects the selected collectors one at a time, as the exporter encodes them, then the other families, except
+   * those already collected.
+   */
+  private static class SelectedFamilies implements Enumeration<MetricFamilySamples> {
+
+    private final Set<String> names;
+    private final Iterator<Collector> collectors;
+    private final Enumeration<MetricFamilySamples> others;
+    private Iterator<MetricFamilySamples> collected = Collections.emptyIterator();
+    private MetricFamilySamples next;
+
+    private SelectedFamilies(Map<String, Collector> selected, Enumeration<MetricFamilySamples> others) {
+      this.names = selected.keySet();
+      this.collectors = selected.values().iterator();
+      this.others = others;
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+      while (next == null) {
+        if (collected.hasNext()) {
+          next = collected.next();
+        } else if (collectors.hasNext()) {
+          collected = collectors.next().collect().iterator();
+        } else if (others.hasMoreElements()) {
+          MetricFamilySamples family = others.nextElement();
+          if (!names.contains(family.name)) {
+            next = family;
+          }
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public MetricFamilySamples nextElement() {
+      if (!hasMoreElements()) {
+        throw new NoSuchElementException();
+      }
+      MetricFamilySamples family = next;
+      next = null;
+      return family;
+    }
+  }
+
+  private static class SharedFamily {
+
+    private final Family<?> family;
+    private int refs;
+
+    private SharedFamily(Family<?> family) {
+      this.family = family;
+    }
+  }
+}
@@ -18,57 +18,86 @@ package io.vertx.ext.dropwizard.impl;
 
 import java.util.LinkedHashMap;
 
-import com.codahale.metrics.Counter;
-import com.codahale.metrics.Histogram;
-
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.core.spi.metrics.DatagramSocketMetrics;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
+ * The metrics of a datagram socket: the packets it reads and writes are observed in families shared by all the
+ * sockets and labelled by the {@code local} address the socket listens on, or {@code ?} until it listens. The children
+ * are bound once, so that a packet costs a single observation. A listening socket acquires the children of its address
+ * and releases them when closed, the series of an address go away with its last socket.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  */
 class DatagramSocketMetricsImpl extends AbstractMetrics implements DatagramSocketMetrics {
 
-  private Counter socketsCounter;
-  private Histogram bytesRead;
-  private Histogram bytesWritten;
-  private Counter exceptions;
+  static final String NOT_LISTENING = "?";
 
-  DatagramSocketMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels) {
-    super(registry, baseName, globalLabels);
-    socketsCounter = counter("sockets");
-    exceptions = counter("exceptions");
-    bytesWritten = histogram("bytes-written");
-    socketsCounter.inc();
+  private final Gauge.Child sockets;
+  private final Family<Histogram.Child> bytesRead;
+  private final Family<Histogram.Child> bytesWritten;
+  private final Family<Counter.Child> exceptions;
+  private volatile String local = NOT_LISTENING;
+  private volatile Histogram.Child localBytesRead;
+  private volatile Histogram.Child localBytesWritten;
+
+  DatagramSocketMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels,
+                            DropwizardMetricsOptions options) {
+    super(registry, baseName, globalLabels, options);
+    sockets = labels(gauge("sockets"));
+    exceptions = counter("exceptions", "local");
+    bytesRead = histogram("bytes_read", "local");
+    bytesWritten = histogram("bytes_written", "local");
+    localBytesWritten = labels(bytesWritten, NOT_LISTENING);
+    sockets.inc();
   }
 
   @Override
-  public void close() {
-    socketsCounter.dec();
+  public synchronized void close() {
+    sockets.dec();
+    if (localBytesRead != null) {
+      bytesRead.release(local);
+      if (bytesWritten.release(local)) {
+        exceptions.remove(local);
+      }
+    }
     removeAll();
   }
 
   @Override
-  public void listening(String localName, SocketAddress localAddress) {
-    String serverName = localName + ':' + localAddress.port();
-    bytesRead = histogram(serverName, "bytes-read");
+  public synchronized void listening(String localName, SocketAddress localAddress) {
+    String listening = localName + ':' + localAddress.port();
+    localBytesWritten = bytesWritten.acquire(listening);
+    localBytesRead = bytesRead.acquire(listening);
+    local = listening;
+  }
+
+  @Override
+  boolean isReferenced(Family<?> family, String[] values) {
+    // The listening sockets hold the children of their address, the others share the children of NOT_LISTENING
+    return values.length > 0 && (NOT_LISTENING.equals(values[0]) || bytesWritten.isHeld(values[0]));
   }
 
   @Override
   public void bytesRead(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-    if (bytesRead != null) {
-      bytesRead.update(numberOfBytes);
+    Histogram.Child child = localBytesRead;
+    if (child != null) {
+      child.observe(numberOfBytes);
     }
   }
 
   @Override
   public void bytesWritten(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-    bytesWritten.update(numberOfBytes);
+    localBytesWritten.observe(numberOfBytes);
   }
 
   @Override
   public void exceptionOccurred(Void socketMetric, SocketAddress remoteAddress, Throwable t) {
-    exceptions.inc();
+    labels(exceptions, local).inc();
   }
 }
@@ -4,69 +4,92 @@ import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 
 /**
+ * The children of an endpoint, acquired when the endpoint is created and released when it is closed, so that the
+ * series of an endpoint go away with it. Clients sharing a reporter share the children of a same endpoint.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class EndpointMetric {
 
+  private static final double NANOS_PER_SECOND = 1E9;
+
   private final HttpClientReporter reporter;
   private final String remote;
-  private final Histogram queueDelay;
-  private final Gauge queueSize;
-  private final Gauge connections;
-  private final Histogram.Timer usage;
-  private final Histogram ttfb;
-  private final Gauge inUse;
-
-  private Histogram.Timer ttfbTimer;
+  private final Histogram.Child queueDelay;
+  private final Gauge.Child queueSize;
+  private final Gauge.Child openNetSockets;
+  private final Histogram.Child usage;
+  private final Histogram.Child ttfb;
+  private final Gauge.Child inUse;
 
   EndpointMetric(HttpClientReporter reporter, String name) {
     this.reporter = reporter;
     this.remote = name;
-    queueDelay = reporter.histogram("queue_delay", "remote");
-    queueSize = reporter.gauge("queue_size", "remote");
-    connections = reporter.gauge("connections", "remote");
-    usage = reporter.labels(reporter.histogram("usage", "remote"), remote).startTimer();
-    ttfb = reporter.histogram("ttfb", "remote");
-    inUse = reporter.gauge("in_use", "remote");
+    queueDelay = reporter.endpointQueueDelay.acquire(remote);
+    queueSize = reporter.endpointQueueSize.acquire(remote);
+    openNetSockets = reporter.endpointOpenNetSockets.acquire(remote);
+    usage = reporter.endpointUsage.acquire(remote);
+    ttfb = reporter.endpointTtfb.acquire(remote);
+    inUse = reporter.endpointInUse.acquire(remote);
   }
 
-  void startTtfb() {
-    this.ttfbTimer = reporter.labels(ttfb, remote).startTimer();
+  /**
+   * Release the children of the endpoint, they are removed once no other client holds them.
+   */
+  void close() {
+    reporter.endpointQueueDelay.release(remote);
+    reporter.endpointQueueSize.release(remote);
+    reporter.endpointOpenNetSockets.release(remote);
+    reporter.endpointUsage.release(remote);
+    reporter.endpointTtfb.release(remote);
+    reporter.endpointInUse.release(remote);
   }
 
-  void endTtfb() {
-    if (ttfbTimer != null) {
-      ttfbTimer.observeDuration();
+  /**
+   * Observe the time to first byte of a request: each request keeps when it ended, as concurrent requests to the
+   * endpoint end and get their response in any order with HTTP/2 and pipelining.
+   */
+  void observeTtfb(RequestMetric requestMetric) {
+    long requestEnd = requestMetric.requestEnd;
+    if (requestEnd != 0) {
+      requestMetric.requestEnd = 0;
+      ttfb.observe((reporter.clock.nanoTime() - requestEnd) / NANOS_PER_SECOND);
     }
   }
 
   void incInUse() {
-    reporter.labels(inUse, remote).inc();
+    inUse.inc();
   }
 
   void decInUse() {
-    reporter.labels(inUse, remote).dec();
+    inUse.dec();
   }
 
   void incConnections() {
-    reporter.labels(connections, remote).inc();
+    openNetSockets.inc();
   }
 
   void decConnections() {
-    reporter.labels(connections, remote).dec();
+    openNetSockets.dec();
   }
 
-  void observeUsage() {
-    usage.observeDuration();
+  /**
+   * Observe how long a connection of the endpoint was used by a request, from its beginning to the end of its response.
+   */
+  void observeUsage(long nanos) {
+    usage.observe(nanos / NANOS_PER_SECOND);
   }
 
-  Histogram.Timer enqueued() {
-    reporter.labels(queueSize, remote).inc();
-    return reporter.labels(queueDelay, remote).startTimer();
+  /**
+   * @return when the request was queued, from the clock of the reporter
+   */
+  long enqueued() {
+    queueSize.inc();
+    return reporter.clock.nanoTime();
   }
 
-  void dequeued(Histogram.Timer timer) {
-    reporter.labels(queueSize, remote).dec();
-    timer.observeDuration();
+  void dequeued(long enqueued) {
+    queueSize.dec();
+    queueDelay.observe((reporter.clock.nanoTime() - enqueued) / NANOS_PER_SECOND);
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.prometheus.client.Histogram;
+import io.vertx.core.impl.VertxInternal;
+
+/**
+ * Measures how late the event loops run their tasks: a task is scheduled on each event loop at a fixed interval, and
+ * the delay between the time it was due and the time it actually runs is observed in a histogram per event loop.
+ * <p>
+ * A loop blocked by a long task or overloaded with events runs the probe late, an idle loop runs it within the
+ * precision of its timer, about a millisecond.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class EventLoopLagProbe {
+
+  private static final double NANOS_PER_SECOND = 1E9;
+
+  private final VertxInternal vertx;
+  private final long interval;
+  private final Clock clock;
+  private final Family<Histogram.Child> lag;
+  private final List<Probe> probes = new ArrayList<>();
+  private volatile boolean closed;
+
+  EventLoopLagProbe(VertxInternal vertx, long interval, Clock clock, Family<Histogram.Child> lag) {
+    this.vertx = vertx;
+    this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+    this.clock = clock;
+    this.lag = lag;
+  }
+
+  synchronized void start() {
+    if (probes.isEmpty() && !closed) {
+      for (EventExecutor eventLoop : vertx.getEventLoopGroup()) {
+        Probe probe = new Probe(eventLoop);
+        probes.add(probe);
+        probe.schedule();
+      }
+    }
+  }
+
+  synchronized List<Probe> probes() {
+    return new ArrayList<>(probes);
+  }
+
+  synchronized void close() {
+    closed = true;
+    for (Probe probe : probes) {
+      probe.future.cancel(false);
+    }
+    probes.clear();
+  }
+
+  /**
+   * The probe of an event loop, only run by this event loop once started.
+   */
+  class Probe implements Runnable {
+
+    final EventExecutor eventLoop;
+    private String name;
+    private long due;
+    private volatile ScheduledFuture<?> future;
+
+    Probe(EventExecutor eventLoop) {
+      this.eventLoop = eventLoop;
+    }
+
+    void schedule() {
+      due = clock.nanoTime() + interval;
+      future = eventLoop.schedule(this, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void run() {
+      long now = clock.nanoTime();
+      if (closed) {
+        return;
+      }
+      if (name == null) {
+        name = Thread.currentThread().getName();
+      }
+      // Resolved on each run, as the series can expire when the interval is longer than the series time to live
+      lag.labels(name).observe(Math.max(0, now - due) / NANOS_PER_SECOND);
+      schedule();
+    }
+  }
+}
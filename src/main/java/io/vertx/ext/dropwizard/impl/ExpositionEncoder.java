@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+/**
+ * Encodes metric family samples in one of the formats Prometheus scrapes, directly into a {@link ByteBuf}.
+ * <p>
+ * Encoders are stateless: a scrape writes the header of each family, then its samples in as many steps as it needs,
+ * then the footer. The labels of the series are encoded once and kept in the {@link SeriesKeys} of the format.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+interface ExpositionEncoder {
+
+  /**
+   * @return the value of the {@code Content-Type} header of the encoded scrape
+   */
+  String contentType();
+
+  void writeHeader(ByteBuf buf, MetricFamilySamples family, SeriesKeys keys);
+
+  /**
+   * Write at least one sample of {@code family}, starting with the sample at {@code index}.
+   *
+   * @return the index of the next sample to write
+   */
+  int writeSamples(ByteBuf buf, MetricFamilySamples family, int index, SeriesKeys keys);
+
+  /**
+   * Write what ends the scrape, after the last family.
+   */
+  default void writeFooter(ByteBuf buf) {
+  }
+
+  /**
+   * @return the encoder of the preferred format of an {@code Accept} header, the text format by default
+   */
+  static ExpositionEncoder negotiate(String accept) {
+    if (accept == null) {
+      return TextFormatEncoder.INSTANCE;
+    }
+    ExpositionEncoder encoder = TextFormatEncoder.INSTANCE;
+    double best = -1;
+    for (String range : accept.split(",")) {
+      String[] params = range.split(";");
+      String type = params[0].trim().toLowerCase();
+      ExpositionEncoder candidate;
+      if (type.equals("application/openmetrics-text")) {
+        candidate = OpenMetricsEncoder.INSTANCE;
+      } else if (type.equals("application/vnd.google.protobuf")) {
+        candidate = ProtobufEncoder.INSTANCE;
+      } else if (type.equals("text/plain") || type.equals("*/*")) {
+        candidate = TextFormatEncoder.INSTANCE;
+      } else {
+        continue;
+      }
+      double q = 1;
+      for (int i = 1; i < params.length; i++) {
+        String param = params[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2).trim());
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        } else if (candidate == ProtobufEncoder.INSTANCE
+          && (param.startsWith("proto=") && !param.equals("proto=" + ProtobufEncoder.MESSAGE)
+          || param.startsWith("encoding=") && !param.equals("encoding=delimited"))) {
+          // Only the length delimited MetricFamily messages are supported
+          candidate = null;
+          break;
+        }
+      }
+      if (candidate != null && q > 0 && q > best) {
+        encoder = candidate;
+        best = q;
+      }
+    }
+    return encoder;
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.SimpleCollector;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * A metric family, i.e. a labelled collector along with the children it has handed out.
+ * <p>
+ * The global label values are bound once when the family is created, and children are cached in a tree of maps
+ * keyed by one label value per level, so that resolving an existing child through the fixed arity
+ * {@code labels} methods allocates nothing. Label values arrays are only built when a child is created.
+ * <p>
+ * The number of series of a family is bounded: once {@code maxSeries} children exist, new label combinations are
+ * aggregated into an {@link #OVERFLOW} child, keeping only the global labels values. This protects the registry
+ * against unbounded label values such as raw URIs or ephemeral ports.
+ * <p>
+ * Children can be removed explicitly, or {@link #expire expire} once idle.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class Family<C> {
+
+  private static final Logger log = LoggerFactory.getLogger(Family.class);
+
+  static final String OVERFLOW = "overflow";
+
+  private final SimpleCollector<C> collector;
+  private final String name;
+  private final String[] globalValues;
+  private final int maxSeries;
+  private final Node<C> root = new Node<>();
+  private final AtomicInteger series = new AtomicInteger();
+  private volatile C overflow;
+  private String[] overflowValues;
+
+  Family(SimpleCollector<C> collector, String name, String[] globalValues, int maxSeries) {
+    this.collector = collector;
+    this.name = name;
+    this.globalValues = globalValues;
+    this.maxSeries = maxSeries;
+  }
+
+  SimpleCollector<C> collector() {
+    return collector;
+  }
+
+  String name() {
+    return name;
+  }
+
+  String[] globalValues() {
+    return globalValues;
+  }
+
+  C labels() {
+    C child = root.child;
+    return child != null ? child : create();
+  }
+
+  C labels(String value) {
+    Node<C> node = root.get(value);
+    C child = node != null ? node.child : null;
+    return child != null ? child : create(value);
+  }
+
+  C labels(String value1, String value2) {
+    Node<C> node = root.get(value1);
+    if (node != null) {
+      node = node.get(value2);
+    }
+    C child = node != null ? node.child : null;
+    return child != null ? child : create(value1, value2);
+  }
+
+  C labels(String value1, String value2, String value3) {
+    Node<C> node = root.get(value1);
+    if (node != null) {
+      node = node.get(value2);
+      if (node != null) {
+        node = node.get(value3);
+      }
+    }
+    C child = node != null ? node.child : null;
+    return child != null ? child : create(value1, value2, value3);
+  }
+
+  /**
+   * @param values the label values, global ones excluded
+   * @return the child for these values, or the overflow child when the family is full
+   */
+  C labels(String... values) {
+    Node<C> node = root;
+    for (int i = 0; i < values.length && node != null; i++) {
+      node = node.get(values[i]);
+    }
+    C child = node != null ? node.child : null;
+    return child != null ? child : create(values);
+  }
+
+  private C create(String... values) {
+    // Creations and removals are serialized, lookups are not
+    synchronized (this) {
+      Node<C> node = find(values);
+      if (node != null && node.child != null) {
+        return node.child;
+      }
+      if (maxSeries > 0 && series.get() >= maxSeries) {
+        return overflow(values.length);
+      }
+      node = root;
+      for (String value : values) {
+        node = node.getOrCreate(value);
+      }
+      C child = collector.labels(allValues(values));
+      node.child = child;
+      series.incrementAndGet();
+      return child;
+    }
+  }
+
+  /**
+   * Set the child for {@code values}, e.g. a child computing its value when collected.
+   *
+   * @param values the label values, global ones excluded
+   */
+  synchronized void set(C child, String... values) {
+    Node<C> node = root;
+    for (String value : values) {
+      node = node.getOrCreate(value);
+    }
+    if (node.child == null) {
+      series.incrementAndGet();
+    }
+    collector.setChild(child, allValues(values));
+    node.child = child;
+  }
+
+  /**
+   * Get the child for {@code values} like {@link #labels(String...)} and count one more holder for it, see
+   * {@link #release(String...)}.
+   */
+  synchronized C acquire(String... values) {
+    C child = labels(values);
+    Node<C> node = find(values);
+    if (node != null && node.child == child) {
+      node.holders++;
+    }
+    return child;
+  }
+
+  /**
+   * Count one less holder for the child of {@code values} and remove the child once it has none.
+   *
+   * @return whether the child has been removed
+   */
+  synchronized boolean release(String... values) {
+    Node<C> node = find(values);
+    if (node == null || node.holders == 0 || --node.holders > 0) {
+      return false;
+    }
+    remove(values);
+    return true;
+  }
+
+  /**
+   * @return whether the child for {@code values} is {@link #acquire(String...) acquired}
+   */
+  boolean isHeld(String... values) {
+    Node<C> node = find(values);
+    return node != null && node.holders > 0;
+  }
+
+  /**
+   * Remove all the children, including the overflow one.
+   */
+  synchronized void clear() {
+    remove();
+    if (overflow != null) {
+      overflow = null;
+      collector.remove(overflowValues);
+    }
+  }
+
+  /**
+   * Remove the children whose first label values are {@code values}, global ones excluded.
+   */
+  synchronized void remove(String... values) {
+    if (values.length == 0) {
+      removeChildren(root, values);
+      return;
+    }
+    Node<C> parent = find(Arrays.copyOf(values, values.length - 1));
+    Node<C> node = parent != null ? parent.get(values[values.length - 1]) : null;
+    if (node != null) {
+      parent.children.remove(values[values.length - 1]);
+      removeChildren(node, values);
+    }
+  }
+
+  private void removeChildren(Node<C> node, String[] values) {
+    if (node.child != null) {
+      node.child = null;
+      collector.remove(allValues(values));
+      series.decrementAndGet();
+    }
+    ConcurrentMap<String, Node<C>> children = node.children;
+    if (children != null) {
+      node.children = null;
+      children.forEach((value, child) -> {
+        String[] childValues = Arrays.copyOf(values, values.length + 1);
+        childValues[values.length] = value;
+        removeChildren(child, childValues);
+      });
+    }
+  }
+
+  /**
+   * Remove the labelled children whose value did not change during {@code ttl}, gauges only when their value is zero.
+   * A change is detected by comparing the value of each child with the one seen by the previous call, so this is meant
+   * to be called periodically, more often than {@code ttl}.
+   *
+   * @param now the current time, in milliseconds
+   * @param ttl the time to live of idle children, in milliseconds
+   * @param referenced tells whether the children for some label values, global ones excluded, are still referenced
+   *                   and must be kept
+   * @return the number of removed children
+   */
+  synchronized int expire(long now, long ttl, Predicate<String[]> referenced) {
+    return expireChildren(root, new String[0], now, ttl, referenced);
+  }
+
+  private int expireChildren(Node<C> parent, String[] parentValues, long now, long ttl, Predicate<String[]> referenced) {
+    ConcurrentMap<String, Node<C>> children = parent.children;
+    if (children == null) {
+      return 0;
+    }
+    int removed = 0;
+    for (Map.Entry<String, Node<C>> entry : children.entrySet()) {
+      Node<C> node = entry.getValue();
+      String[] values = Arrays.copyOf(parentValues, parentValues.length + 1);
+      values[parentValues.length] = entry.getKey();
+      removed += expireChildren(node, values, now, ttl, referenced);
+      C child = node.child;
+      if (child != null && isIdle(node, child, now, ttl) && node.holders == 0 && !referenced.test(values)) {
+        // Detached first, so that a concurrent update of the child can be detected and the child restored
+        node.child = null;
+        collector.remove(allValues(values));
+        series.decrementAndGet();
+        if (value(child) != node.lastValue) {
+          node.child = child;
+          collector.setChild(child, allValues(values));
+          series.incrementAndGet();
+        } else {
+          removed++;
+        }
+      }
+      if (node.child == null && (node.children == null || node.children.isEmpty())) {
+        children.remove(entry.getKey());
+      }
+    }
+    return removed;
+  }
+
+  private boolean isIdle(Node<C> node, C child, long now, long ttl) {
+    double value = value(child);
+    if (Double.isNaN(value)) {
+      return false;
+    }
+    if (value != node.lastValue) {
+      node.lastValue = value;
+      node.lastChange = now;
+      return false;
+    }
+    return now - node.lastChange >= ttl && (!(child instanceof Gauge.Child) || value == 0d);
+  }
+
+  /**
+   * @return a value changing whenever {@code child} is updated, {@code NaN} for children that cannot be tracked
+   */
+  private static double value(Object child) {
+    if (child instanceof Counter.Child) {
+      return ((Counter.Child) child).get();
+    }
+    if (child instanceof Gauge.Child) {
+      return ((Gauge.Child) child).get();
+    }
+    if (child instanceof Histogram.Child) {
+      // The last bucket is the observations count
+      double[] buckets = ((Histogram.Child) child).get().buckets;
+      return buckets[buckets.length - 1];
+    }
+    return Double.NaN;
+  }
+
+  private Node<C> find(String[] values) {
+    Node<C> node = root;
+    for (int i = 0; i < values.length && node != null; i++) {
+      node = node.get(values[i]);
+    }
+    return node;
+  }
+
+  private C overflow(int size) {
+    C child = overflow;
+    if (child == null) {
+      log.warn("Metric " + name + " reached its maximum of " + maxSeries + " series, further series are reported with the '" + OVERFLOW + "' label value");
+      String[] values = new String[size];
+      Arrays.fill(values, OVERFLOW);
+      overflowValues = allValues(values);
+      child = collector.labels(overflowValues);
+      overflow = child;
+    }
+    return child;
+  }
+
+  private String[] allValues(String[] values) {
+    String[] all = Arrays.copyOf(globalValues, globalValues.length + values.length);
+    System.arraycopy(values, 0, all, globalValues.length, values.length);
+    return all;
+  }
+
+  private static final class Node<C> {
+
+    private volatile ConcurrentMap<String, Node<C>> children;
+    volatile C child;
+    // Acquired by, under the family lock
+    volatile int holders;
+    // Tracked by expire, under the family lock
+    double lastValue = Double.NaN;
+    long lastChange;
+
+    Node<C> get(String value) {
+      ConcurrentMap<String, Node<C>> map = children;
+      return map != null ? map.get(value) : null;
+    }
+
+    Node<C> getOrCreate(String value) {
+      ConcurrentMap<String, Node<C>> map = children;
+      if (map == null) {
+        map = new ConcurrentHashMap<>();
+        children = map;
+      }
+      return map.computeIfAbsent(value, v -> new Node<>());
+    }
+  }
+}
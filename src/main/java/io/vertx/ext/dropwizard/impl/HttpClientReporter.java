@@ -4,18 +4,35 @@ import java.util.LinkedHashMap;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 class HttpClientReporter extends PrometheusTCPMetrics {
 
-  private final Gauge totalMaxPoolSize;
+  private final Family<Gauge.Child> totalMaxPoolSize;
+  // Acquired by the endpoints, see EndpointMetric
+  final Family<Histogram.Child> endpointQueueDelay;
+  final Family<Gauge.Child> endpointQueueSize;
+  final Family<Gauge.Child> endpointOpenNetSockets;
+  final Family<Histogram.Child> endpointUsage;
+  final Family<Histogram.Child> endpointTtfb;
+  final Family<Gauge.Child> endpointInUse;
   String id;
 
-  HttpClientReporter(CollectorRegistry registry, String baseName, String id, LinkedHashMap<String, String> labels) {
-    super(registry, baseName, labels);
+  HttpClientReporter(CollectorRegistry registry, String baseName, String id, LinkedHashMap<String, String> labels,
+                     DropwizardMetricsOptions options) {
+    super(registry, baseName, labels, options, options.getMonitoredHttpClientUris(),
+      RemoteLabeler.CLIENT);
     totalMaxPoolSize = gauge("connections_max_pool_size");
+    endpointQueueDelay = histogram("queue_delay", "remote");
+    endpointQueueSize = gauge("queue_size", "remote");
+    endpointOpenNetSockets = gauge("open_netsockets", "remote");
+    endpointUsage = histogram("usage", "remote");
+    endpointTtfb = histogram("ttfb", "remote");
+    endpointInUse = gauge("in_use", "remote");
     this.id = id;
   }
 
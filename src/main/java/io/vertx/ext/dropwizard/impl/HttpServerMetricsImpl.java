@@ -25,18 +25,21 @@ import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.core.spi.metrics.HttpServerMetrics;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  */
-class HttpServerMetricsImpl extends PrometheusTCPMetrics implements HttpServerMetrics<RequestMetric, Void, Void> {
+class HttpServerMetricsImpl extends PrometheusTCPMetrics implements HttpServerMetrics<RequestMetric, Void, SocketMetric> {
 
-  HttpServerMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels) {
-    super(registry, baseName, globalLabels);
+  HttpServerMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels,
+                        DropwizardMetricsOptions options) {
+    super(registry, baseName, globalLabels, options, options.getMonitoredHttpServerUris(),
+      RemoteLabeler.server(options));
   }
 
   @Override
-  public RequestMetric requestBegin(Void socketMetric, HttpServerRequest request) {
+  public RequestMetric requestBegin(SocketMetric socketMetric, HttpServerRequest request) {
     return createRequestMetric(request.method().toString(), request.uri(), null);
   }
 
@@ -56,12 +59,12 @@ class HttpServerMetricsImpl extends PrometheusTCPMetrics implements HttpServerMe
   }
 
   @Override
-  public RequestMetric responsePushed(Void socketMetric, HttpMethod method, String uri, HttpServerResponse response) {
+  public RequestMetric responsePushed(SocketMetric socketMetric, HttpMethod method, String uri, HttpServerResponse response) {
     return createRequestMetric(method.toString(), uri, null);
   }
 
   @Override
-  public Void connected(Void socketMetric, ServerWebSocket serverWebSocket) {
+  public Void connected(SocketMetric socketMetric, ServerWebSocket serverWebSocket) {
     webSocketConnected();
     return null;
   }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import io.vertx.ext.dropwizard.Match;
+
+/**
+ * Resolves a raw value (URI, address...) to a bounded label value according to a list of {@link Match}.
+ * <p>
+ * The list is compiled once: {@code EQUALS} matches go to a hash map, {@code REGEX} matches are indexed in a trie
+ * by their literal prefix, and the regular expressions sharing a trie node are combined into a single alternation.
+ * Resolving a value walks the trie along the value and only evaluates the alternations found on its path, so the
+ * cost depends on the length of the value rather than on the number of configured matches. Regex resolutions are
+ * also kept in a bounded cache keyed by the raw value.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class Matcher {
+
+  /**
+   * The label value used for values not matched by any {@link Match}.
+   */
+  static final String OTHER = "other";
+
+  /**
+   * The maximum number of regex resolutions kept in cache, the cache is cleared when reached.
+   */
+  static final int CACHE_SIZE = 1024;
+
+  private static final String METACHARS = "\\[](){}.*+?^$|";
+  // Back references and named groups, a named group can only be defined once in a combined alternation
+  private static final Pattern GROUP_REFERENCE = Pattern.compile(".*(\\\\([1-9]|k<)|\\(\\?<[a-zA-Z]).*");
+  private static final int NONE = Integer.MAX_VALUE;
+  // Cached for values not matched by any regex, compared by identity
+  private static final String NO_MATCH = new String();
+
+  private final Map<String, String> exactMatches = new HashMap<>();
+  private final String[] regexLabels;
+  private final Node root = new Node();
+  private final List<Node> isolated = new ArrayList<>();
+  private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
+  Matcher(List<Match> matches) {
+    List<String> labels = new ArrayList<>();
+    for (Match match : matches) {
+      String label = match.getAlias() != null ? match.getAlias() : match.getValue();
+      switch (match.getType()) {
+        case EQUALS:
+          exactMatches.putIfAbsent(match.getValue(), label);
+          break;
+        case REGEX:
+          String regex = match.getValue();
+          Node node;
+          if (GROUP_REFERENCE.matcher(regex).matches()) {
+            // Back references would point to the wrong group once combined, and named groups could be defined twice,
+            // keep such regex on its own
+            node = new Node();
+            isolated.add(node);
+          } else {
+            node = root.node(literalPrefix(regex));
+          }
+          node.add(labels.size(), regex);
+          labels.add(label);
+          break;
+      }
+    }
+    regexLabels = labels.toArray(new String[labels.size()]);
+    root.compile();
+    isolated.forEach(Node::compile);
+  }
+
+  /**
+   * @return whether there is no match at all
+   */
+  boolean isEmpty() {
+    return exactMatches.isEmpty() && regexLabels.length == 0;
+  }
+
+  /**
+   * @return the label of the first matching {@link Match}: its alias if any, otherwise the matched value for
+   * {@code EQUALS} and the regular expression for {@code REGEX}, or {@code null} when nothing matches
+   */
+  String matches(String value) {
+    String label = exactMatches.get(value);
+    if (label != null || regexLabels.length == 0) {
+      return label;
+    }
+    label = cache.get(value);
+    if (label == null) {
+      label = resolve(value);
+      if (label == null) {
+        label = NO_MATCH;
+      }
+      if (cache.size() >= CACHE_SIZE) {
+        cache.clear();
+      }
+      cache.put(value, label);
+    }
+    return label == NO_MATCH ? null : label;
+  }
+
+  /**
+   * Resolve {@code value} against the regular expressions, bypassing the cache.
+   */
+  String resolve(String value) {
+    int best = NONE;
+    for (int i = 0; i < isolated.size(); i++) {
+      best = isolated.get(i).match(value, best);
+    }
+    Node node = root;
+    int pos = 0;
+    while (true) {
+      best = node.match(value, best);
+      if (pos == value.length() || node.children == null) {
+        break;
+      }
+      node = node.children.get(value.charAt(pos++));
+      if (node == null) {
+        break;
+      }
+    }
+    return best == NONE ? null : regexLabels[best];
+  }
+
+  /**
+   * @return the characters a value must start with to match {@code regex}, possibly empty
+   */
+  static String literalPrefix(String regex) {
+    if (regex.indexOf('|') >= 0) {
+      return "";
+    }
+    StringBuilder prefix = new StringBuilder();
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (METACHARS.indexOf(c) >= 0) {
+        if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+          // The previous character is optional
+          prefix.setLength(prefix.length() - 1);
+        }
+        break;
+      }
+      prefix.append(c);
+    }
+    return prefix.toString();
+  }
+
+  private static class Node {
+
+    private Map<Character, Node> children;
+    private List<String> regexes;
+    private int[] indexes;
+    // The number of the group wrapping each regex in the alternation
+    private int[] groups;
+    private Pattern automaton;
+
+    Node node(String prefix) {
+      Node node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        if (node.children == null) {
+          node.children = new HashMap<>();
+        }
+        node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+      }
+      return node;
+    }
+
+    void add(int index, String regex) {
+      if (regexes == null) {
+        regexes = new ArrayList<>();
+        indexes = new int[0];
+      }
+      regexes.add(regex);
+      indexes = Arrays.copyOf(indexes, indexes.length + 1);
+      indexes[indexes.length - 1] = index;
+    }
+
+    void compile() {
+      if (regexes != null) {
+        groups = new int[indexes.length];
+        StringBuilder alternation = new StringBuilder();
+        int group = 1;
+        for (int i = 0; i < indexes.length; i++) {
+          String regex = regexes.get(i);
+          groups[i] = group;
+          // Numbered rather than named, the groups of the regex follow its own one
+          group += 1 + Pattern.compile(regex).matcher("").groupCount();
+          if (i > 0) {
+            alternation.append('|');
+          }
+          alternation.append('(').append(regex).append(')');
+        }
+        automaton = indexes.length == 1 ? Pattern.compile(regexes.get(0)) : Pattern.compile(alternation.toString());
+        regexes = null;
+      }
+      if (children != null) {
+        children.values().forEach(Node::compile);
+      }
+    }
+
+    /**
+     * @return the index of the first regex of this node matching {@code value} if lower than {@code best},
+     * {@code best} otherwise
+     */
+    int match(String value, int best) {
+      if (automaton == null || indexes[0] >= best) {
+        return best;
+      }
+      java.util.regex.Matcher m = automaton.matcher(value);
+      if (!m.matches()) {
+        return best;
+      }
+      if (indexes.length == 1) {
+        return indexes[0];
+      }
+      // Alternatives are tried in order, so the first participating group is the first matching regex
+      for (int i = 0; i < groups.length; i++) {
+        if (indexes[i] >= best) {
+          break;
+        }
+        if (m.start(groups[i]) >= 0) {
+          return indexes[i];
+        }
+      }
+      return best;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+/**
+ * Encodes metric family samples in the OpenMetrics text format (version 1.0.0).
+ * <p>
+ * It differs from the Prometheus text format by the names of counters, the family being named without the
+ * {@code _total} suffix which their sample must have, by the {@code unknown} type replacing {@code untyped}, by the
+ * escaping of quotes in help texts and by the {@code # EOF} line ending the exposition.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class OpenMetricsEncoder extends TextFormatEncoder {
+
+  static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  static final OpenMetricsEncoder INSTANCE = new OpenMetricsEncoder();
+
+  private static final String TOTAL = "_total";
+  private static final byte[] TOTAL_BYTES = TOTAL.getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] EOF = "# EOF\n".getBytes(StandardCharsets.US_ASCII);
+
+  @Override
+  public String contentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  public void writeFooter(ByteBuf buf) {
+    buf.writeBytes(EOF);
+  }
+
+  @Override
+  String familyName(MetricFamilySamples family) {
+    if (family.type == Collector.Type.COUNTER && family.name.endsWith(TOTAL)) {
+      return family.name.substring(0, family.name.length() - TOTAL.length());
+    }
+    return family.name;
+  }
+
+  @Override
+  void writeSampleName(ByteBuf buf, MetricFamilySamples family, MetricFamilySamples.Sample sample) {
+    writeAscii(buf, sample.name);
+    if (family.type == Collector.Type.COUNTER && sample.name.equals(family.name) && !sample.name.endsWith(TOTAL)) {
+      buf.writeBytes(TOTAL_BYTES);
+    }
+  }
+
+  @Override
+  boolean escapeHelpQuotes() {
+    return true;
+  }
+
+  @Override
+  String typeName(Collector.Type type) {
+    return type == Collector.Type.UNTYPED ? "unknown" : super.typeName(type);
+  }
+}
@@ -2,65 +2,80 @@ package io.vertx.ext.dropwizard.impl;
 
 import java.util.LinkedHashMap;
 
-import com.codahale.metrics.Counter;
-import com.codahale.metrics.RatioGauge;
-import com.codahale.metrics.Timer;
-
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
+ * The metrics of a pool, labelled by {@code pool_type} and {@code pool_name}.
+ * <p>
+ * The children are bound once. A task is tracked by a single {@link Task} carrying the time of its last transition,
+ * from its submission to its end.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class PoolMetricsImpl extends AbstractMetrics implements PoolMetrics<Timer.Context> {
+public class PoolMetricsImpl extends AbstractMetrics implements PoolMetrics<PoolMetricsImpl.Task> {
+
+  private static final double NANOS_PER_SECOND = 1E9;
 
-  private final Timer queueDelay;
-  private Counter queueSize;
-  private final Timer usage;
-  private Counter inUse;
+  private final Histogram.Child queueDelay;
+  private final Gauge.Child queueSize;
+  private final Histogram.Child usage;
+  private final Gauge.Child inUse;
 
-  public PoolMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels, int maxSize) {
-    super(registry, baseName, globalLabels);
-    this.queueSize = counter("queue-size");
-    this.queueDelay = timer("queue-delay");
-    this.usage = timer("usage");
-    this.inUse = counter("in-use");
+  public PoolMetricsImpl(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> globalLabels,
+                         DropwizardMetricsOptions options, int maxSize) {
+    super(registry, baseName, globalLabels, options);
+    queueSize = labels(gauge("queue_size"));
+    queueDelay = labels(histogram("queue_delay"));
+    usage = labels(histogram("usage"));
+    inUse = labels(gauge("in_use"));
     if (maxSize > 0) {
-      RatioGauge gauge = new RatioGauge() {
+      gauge("pool_ratio").set(new Gauge.Child() {
         @Override
-        protected Ratio getRatio() {
-          return Ratio.of(inUse.getCount(), maxSize);
+        public double get() {
+          return inUse.get() / maxSize;
         }
-      };
-      gauge(gauge, "pool-ratio");
-      gauge(() -> maxSize, "max-pool-size");
+      });
+      labels(gauge("max_pool_size")).set(maxSize);
     }
   }
 
   @Override
-  public Timer.Context submitted() {
+  public Task submitted() {
     queueSize.inc();
-    return queueDelay.time();
+    return new Task(clock.nanoTime());
   }
 
   @Override
-  public void rejected(Timer.Context context) {
+  public void rejected(Task task) {
     queueSize.dec();
-    context.stop();
+    if (task != null) {
+      queueDelay.observe((clock.nanoTime() - task.time) / NANOS_PER_SECOND);
+    }
   }
 
   @Override
-  public Timer.Context begin(Timer.Context context) {
+  public Task begin(Task task) {
+    long now = clock.nanoTime();
     queueSize.dec();
     inUse.inc();
-    context.stop();
-    return usage.time();
+    if (task == null) {
+      return new Task(now);
+    }
+    queueDelay.observe((now - task.time) / NANOS_PER_SECOND);
+    task.time = now;
+    return task;
   }
 
   @Override
-  public void end(Timer.Context context, boolean succeeded) {
+  public void end(Task task, boolean succeeded) {
     inUse.dec();
-    context.stop();
+    if (task != null) {
+      usage.observe((clock.nanoTime() - task.time) / NANOS_PER_SECOND);
+    }
   }
 
   @Override
@@ -72,4 +87,15 @@ public class PoolMetricsImpl extends AbstractMetrics implements PoolMetrics<Time
   public void close() {
     removeAll();
   }
+
+  /**
+   * A task of the pool: when it was submitted, then when it began.
+   */
+  public static final class Task {
+    long time;
+
+    Task(long time) {
+      this.time = time;
+    }
+  }
 }
@@ -17,7 +17,10 @@
 package io.vertx.ext.dropwizard.impl;
 
 import java.util.LinkedHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
@@ -25,6 +28,7 @@ import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.spi.metrics.EventBusMetrics;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -33,22 +37,43 @@ class PrometheusEventBusMetrics extends AbstractMetrics implements EventBusMetri
 
   private static final String LOCAL = "local";
   private static final String REMOTE = "remote";
+  private static final double NANOS_PER_SECOND = 1E9;
 
-  private final Gauge handlerCount;
-  private final Gauge pending;
-  private final Histogram processTime;
-  private final Counter processFailures;
-  private final Histogram messagesBytes;
-  private final Counter messages;
-  private final Counter replyFailures;
+  /**
+   * The address label value of the temporary addresses replies are sent to.
+   */
+  static final String REPLY = "__reply__";
 
-  PrometheusEventBusMetrics(CollectorRegistry registry, String baseName) {
-    super(registry, baseName, new LinkedHashMap<>());
+  // The schedule times kept per handler and origin, a reply handler gets a single message
+  static final int SCHEDULE_TIMES_CAPACITY = 256;
+  private static final int REPLY_SCHEDULE_TIMES_CAPACITY = 2;
+
+  // Acquired by each registered handler, which holds the children of its address
+  private final Family<Gauge.Child> handlerCount;
+  private final Family<Gauge.Child> pending;
+  private final Family<Histogram.Child> queueTime;
+  private final Family<Histogram.Child> processTime;
+  private final Family<Counter.Child> processFailures;
+  private final Family<Histogram.Child> messagesBytes;
+  private final Family<Counter.Child> messages;
+  private final Family<Counter.Child> replyFailures;
+  private final Family<Histogram.Child> roundTrip;
+  private final Matcher addressMatcher;
+  private final boolean collapseReplyShapedAddresses;
+  // The addresses of the reply handlers currently registered
+  private final Set<String> replyAddresses = ConcurrentHashMap.newKeySet();
+
+  PrometheusEventBusMetrics(CollectorRegistry registry, String baseName, DropwizardMetricsOptions options) {
+    super(registry, baseName, new LinkedHashMap<>(), options);
+    addressMatcher = new Matcher(options.getMonitoredEventBusHandlers());
+    collapseReplyShapedAddresses = options.isCollapseReplyShapedAddresses();
 
     handlerCount = gauge("handlers",
       "address");
     pending = gauge("pending",
       "address", "origin");
+    queueTime = histogram("queue_time",
+      "address", "origin");
     processTime = histogram("process_time",
       "address");
     processFailures = counter("process_failures",
@@ -57,18 +82,20 @@ class PrometheusEventBusMetrics extends AbstractMetrics implements EventBusMetri
       "address", "status", "origin");
     replyFailures = counter("reply_failures",
       "address", "failure");
+    roundTrip = histogram("round_trip",
+      "address");
     messagesBytes = histogram("message_bytes",
       "address", "direction");
   }
 
   @Override
   public void messageWritten(String address, int size) {
-    labels(messagesBytes, address, "out").observe(size);
+    labels(messagesBytes, addressLabel(address), "out").observe(size);
   }
 
   @Override
   public void messageRead(String address, int size) {
-    labels(messagesBytes, address, "in").observe(size);
+    labels(messagesBytes, addressLabel(address), "in").observe(size);
   }
 
   @Override
@@ -77,69 +104,296 @@ class PrometheusEventBusMetrics extends AbstractMetrics implements EventBusMetri
 
   @Override
   public HandlerMetric handlerRegistered(String address, String repliedAddress) {
-    labels(handlerCount, address).inc();
-    return new HandlerMetric(address);
+    String label;
+    if (repliedAddress != null) {
+      // Registered before the message is sent, so the reply and its failures are labelled while it is known
+      replyAddresses.add(address);
+      label = REPLY;
+    } else {
+      label = addressLabel(address);
+    }
+    HandlerMetric handler = new HandlerMetric(address, label, handlerCount.acquire(label), labels(processTime, label));
+    handler.handlers.inc();
+    if (repliedAddress != null) {
+      // Registered right before the message it awaits the reply of is sent
+      handler.roundTrip = labels(roundTrip, addressLabel(repliedAddress));
+      handler.sent = clock.nanoTime();
+    }
+    return handler;
   }
 
   @Override
   public void handlerUnregistered(HandlerMetric handler) {
-    labels(handlerCount, handler.address).dec();
+    handler.handlers.dec();
+    // The messages still queued for a removed handler are never begun
+    handler.discardUnbegun();
+    handlerCount.release(handler.address);
+    if (handler.roundTrip != null) {
+      replyAddresses.remove(handler.registeredAddress);
+    }
   }
 
   @Override
   public void scheduleMessage(HandlerMetric handler, boolean local) {
-    labels(pending, handler.address, local ? LOCAL : REMOTE).inc();
+    HandlerMetric.Origin origin = handler.origin(local);
+    origin.pending.inc();
+    origin.scheduleTimes.scheduled(clock.nanoTime());
   }
 
   @Override
   public void beginHandleMessage(HandlerMetric handler, boolean local) {
-    labels(pending, handler.address, local ? LOCAL : REMOTE).dec();
-    handler.startTimer(processTime);
+    long now = clock.nanoTime();
+    HandlerMetric.Origin origin = handler.origin(local);
+    origin.pending.dec();
+    long scheduled = origin.scheduleTimes.next();
+    if (scheduled != 0) {
+      origin.queueTime.observe((now - scheduled) / NANOS_PER_SECOND);
+    }
+    long sent = handler.sent;
+    if (sent != 0) {
+      handler.sent = 0;
+      handler.roundTrip.observe((now - sent) / NANOS_PER_SECOND);
+    }
+    handler.start = now;
   }
 
   @Override
   public void endHandleMessage(HandlerMetric handler, Throwable failure) {
-    handler.endTimer();
+    long start = handler.start;
+    if (start != 0) {
+      handler.start = 0;
+      handler.processTime.observe((clock.nanoTime() - start) / NANOS_PER_SECOND);
+    }
     if (failure != null) {
       labels(processFailures, handler.address).inc();
     }
   }
 
+  @Override
+  boolean isReferenced(Family<?> family, String[] values) {
+    return (family == processTime || family == pending || family == queueTime) && handlerCount.isHeld(values[0]);
+  }
+
   @Override
   public void messageSent(String address, boolean publish, boolean local, boolean remote) {
-    labels(messages, address, publish ? "published" : "sent", local ? LOCAL : REMOTE).inc();
+    labels(messages, addressLabel(address), publish ? "published" : "sent", local ? LOCAL : REMOTE).inc();
   }
 
   @Override
   public void messageReceived(String address, boolean publish, boolean local, int handlers) {
-    labels(messages, address, "received", local ? LOCAL : REMOTE).inc();
+    String label = addressLabel(address);
+    labels(messages, label, "received", local ? LOCAL : REMOTE).inc();
     if (handlers > 0) {
-      labels(messages, address, "delivered", local ? LOCAL : REMOTE).inc();
+      labels(messages, label, "delivered", local ? LOCAL : REMOTE).inc();
     }
   }
 
   @Override
   public void replyFailure(String address, ReplyFailure failure) {
-    labels(replyFailures, address, failure.name()).inc();
+    labels(replyFailures, addressLabel(address), failure.name()).inc();
   }
 
+  private String addressLabel(String address) {
+    if (replyAddresses.contains(address) || collapseReplyShapedAddresses && isReplyAddress(address)) {
+      return REPLY;
+    }
+    if (addressMatcher.isEmpty()) {
+      return address;
+    }
+    String label = addressMatcher.matches(address);
+    return label != null ? label : Matcher.OTHER;
+  }
+
+  /**
+   * @return whether {@code address} has the shape of a generated reply address: a sequence number on a local event
+   * bus, a random UUID on a clustered one. User addresses can have the same shape, so it is only checked when
+   * {@link DropwizardMetricsOptions#isCollapseReplyShapedAddresses()} is enabled
+   */
+  static boolean isReplyAddress(String address) {
+    int length = address.length();
+    if (length == 36) {
+      for (int i = 0; i < length; i++) {
+        char c = address.charAt(i);
+        if (i == 8 || i == 13 || i == 18 || i == 23) {
+          if (c != '-') {
+            return false;
+          }
+        } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (length == 0 || length > 19) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = address.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A registered handler, along with the children of its address.
+   * <p>
+   * Vert.x calls {@code beginHandleMessage}, the handler and {@code endHandleMessage} in a row on the handler context,
+   * so the start of the message being handled is kept in a plain field. A reply handler also keeps the time the
+   * message it awaits the reply of was sent, the sender publishes it to the handler context with the message.
+   */
   public class HandlerMetric {
+    final String registeredAddress;
     final String address;
-    final ConcurrentLinkedDeque<Histogram.Timer> timers = new ConcurrentLinkedDeque<>();
+    final Gauge.Child handlers;
+    final Histogram.Child processTime;
+    private volatile Origin local;
+    private volatile Origin remote;
+    long start;
+    Histogram.Child roundTrip;
+    long sent;
 
-    HandlerMetric(String address) {
+    HandlerMetric(String registeredAddress, String address, Gauge.Child handlers, Histogram.Child processTime) {
+      this.registeredAddress = registeredAddress;
       this.address = address;
+      this.handlers = handlers;
+      this.processTime = processTime;
     }
 
-    void startTimer(Histogram histogram) {
-      timers.addFirst(labels(histogram, address).startTimer());
+    void discardUnbegun() {
+      Origin local = this.local;
+      if (local != null) {
+        local.discardUnbegun();
+      }
+      Origin remote = this.remote;
+      if (remote != null) {
+        remote.discardUnbegun();
+      }
+    }
+
+    Origin origin(boolean local) {
+      // Resolved on first use, so that an address only gets the origins it receives messages from
+      Origin origin = local ? this.local : this.remote;
+      if (origin == null) {
+        synchronized (this) {
+          origin = local ? this.local : this.remote;
+          if (origin == null) {
+            origin = new Origin(local ? LOCAL : REMOTE);
+            if (local) {
+              this.local = origin;
+            } else {
+              this.remote = origin;
+            }
+          }
+        }
+      }
+      return origin;
+    }
+
+    /**
+     * The children of one origin and the times its messages were scheduled.
+     */
+    class Origin {
+      final Gauge.Child pending;
+      final Histogram.Child queueTime;
+      final ScheduleTimes scheduleTimes;
+
+      private Origin(String origin) {
+        pending = labels(PrometheusEventBusMetrics.this.pending, address, origin);
+        queueTime = labels(PrometheusEventBusMetrics.this.queueTime, address, origin);
+        scheduleTimes = new ScheduleTimes(address.equals(REPLY) ? REPLY_SCHEDULE_TIMES_CAPACITY : SCHEDULE_TIMES_CAPACITY);
+      }
+
+      void discardUnbegun() {
+        long unbegun = scheduleTimes.unbegun();
+        if (unbegun > 0) {
+          pending.dec(unbegun);
+        }
+      }
+    }
+  }
+
+  /**
+   * The times messages are scheduled for a handler, in a ring written by the sending threads and read by the handler
+   * context.
+   * <p>
+   * The metrics SPI does not tell which message is begun, so the times are matched by order: the n-th message begun is
+   * assumed to be the n-th one scheduled. Vert.x runs the scheduled messages on the handler context in the order they
+   * were scheduled, paused handlers included, but the matching is skewed when this does not hold:
+   * <ul>
+   *   <li>a message discarded by a paused handler whose buffer is full, or delivered to a handler removed in the
+   *   meantime, is never begun: each later message of the handler is then measured from the time of an earlier message,
+   *   and its queue time is over-reported by the interval between them</li>
+   *   <li>two threads sending at the same time can schedule their messages in the opposite order to the one they run in,
+   *   their times are then swapped</li>
+   * </ul>
+   * A time is only read once its sending thread has published it: a slot claimed but not yet written, or overwritten
+   * by a later message, is skipped rather than measured. When more messages are queued than the ring holds, the oldest
+   * times are overwritten and the queue time of the oldest messages is measured from the oldest time left.
+   */
+  static final class ScheduleTimes {
+    private final AtomicLongArray times;
+    // The sequence of the message whose time is in each slot, -1 while it is being written
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // The number of messages begun, only written by the handler context
+    private long head;
+
+    ScheduleTimes(int capacity) {
+      int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+      times = new AtomicLongArray(size);
+      sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+        sequences.set(i, -1);
+      }
+      mask = size - 1;
+    }
+
+    void scheduled(long time) {
+      publish(claim(), time);
+    }
+
+    /**
+     * @return the sequence of the next message scheduled
+     */
+    long claim() {
+      return tail.getAndIncrement();
+    }
+
+    void publish(long sequence, long time) {
+      int slot = (int) (sequence & mask);
+      sequences.set(slot, -1);
+      times.set(slot, time);
+      sequences.lazySet(slot, sequence);
     }
 
-    void endTimer() {
-      Histogram.Timer t = timers.pollLast();
-      if (t != null) {
-        t.observeDuration();
+    /**
+     * @return the time the next message was scheduled at, or {@code 0} when none was recorded or it is not published
+     */
+    long next() {
+      long tail = this.tail.get();
+      long head = this.head;
+      if (head >= tail) {
+        return 0;
       }
+      this.head = head + 1;
+      long sequence = tail - head > times.length() ? tail - times.length() : head;
+      int slot = (int) (sequence & mask);
+      if (sequences.get(slot) != sequence) {
+        return 0;
+      }
+      long time = times.get(slot);
+      // Written again by a later message while being read
+      return sequences.get(slot) == sequence ? time : 0;
+    }
+
+    /**
+     * @return the number of messages scheduled and not begun, read once the handler is removed
+     */
+    long unbegun() {
+      return tail.get() - head;
     }
   }
 }
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+
+/**
+ * Embedded HTTP server exposing a {@link CollectorRegistry} to Prometheus.
+ * <p>
+ * Samples are encoded in chunks of {@link #CHUNK_SIZE} bytes, each chunk from a separate event loop task, so that a
+ * large scrape never holds the event loop for longer than it takes to encode one chunk.
+ * <p>
+ * The registry is collected once for concurrent requests: a request arriving while it is encoded gets the chunks
+ * encoded so far and then the next ones, as long as none of the chunks it needs was released. Without
+ * {@link DropwizardMetricsOptions#getExporterCacheMaxAge()}, a chunk is released as soon as the requests and
+ * compressors reading the scrape got it, so that a scrape is never held as a whole: a later request joins the
+ * compressed stream of its coding if none of its chunks was released yet, or starts a new scrape. With a max age, the
+ * chunks are kept for the requests arriving until the scrape is older than the max age, then released the same way.
+ * The server runs on a single context, which is the only one accessing the scrapes.
+ * <p>
+ * Requests accepting the {@code gzip} or {@code deflate} content coding get the chunks compressed by a
+ * {@link ScrapeCompressor}, shared by the requests of the same scrape accepting the same coding.
+ * <p>
+ * The format is negotiated from the {@code Accept} header between the Prometheus text format, the OpenMetrics text
+ * format and the delimited protocol buffer format, each one having its own scrapes.
+ * <p>
+ * A request can ask for some families only, by name with {@code name[]} or by prefix with {@code prefix[]}, both
+ * repeatable. These are resolved against the families indexed by the {@link CollectorCache} of the registry, so that
+ * only the selected collectors are collected. Such partial scrapes are neither shared nor cached, and encode the
+ * labels of their series without the {@link SeriesKeys} of the full scrapes.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class PrometheusExporter implements Handler<HttpServerRequest> {
+
+  private static final Logger log = LoggerFactory.getLogger(PrometheusExporter.class);
+
+  static final int CHUNK_SIZE = 32 * 1024;
+
+  private static final CharSequence VARY = HttpHeaders.createOptimized("Vary");
+  private static final CharSequence ACCEPT_AND_ACCEPT_ENCODING = HttpHeaders.createOptimized("Accept, Accept-Encoding");
+  private static final String NAME_PARAM = "name[]";
+  private static final String PREFIX_PARAM = "prefix[]";
+
+  private final Vertx vertx;
+  private final CollectorRegistry registry;
+  private final CollectorCache collectorCache;
+  private final DropwizardMetricsOptions options;
+  private final long cacheMaxAge;
+  // Prometheus text compresses well even at the fastest level, which keeps the event loop time low
+  private final ScrapeCompressor.Pool deflaters = new ScrapeCompressor.Pool(Deflater.BEST_SPEED);
+  private HttpServer server;
+  private final Map<ExpositionEncoder, Scrape> scrapes = new IdentityHashMap<>();
+  private final Map<ExpositionEncoder, SeriesKeys> keys = new IdentityHashMap<>();
+
+  PrometheusExporter(Vertx vertx, CollectorRegistry registry, DropwizardMetricsOptions options) {
+    this.vertx = vertx;
+    this.registry = registry;
+    this.collectorCache = VertxMetricsFactoryImpl.collectorCache(registry);
+    this.options = options;
+    this.cacheMaxAge = TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.getExporterCacheMaxAge()));
+  }
+  void start() {
+    start(null);
+  }
+
+  void start(Handler<AsyncResult<Void>> completionHandler) {
+    HttpServerOptions serverOptions = new HttpServerOptions()
+      .setHost(options.getExporterHost())
+      .setPort(options.getExporterPort());
+    server = vertx.createHttpServer(serverOptions).requestHandler(this).listen(ar -> {
+      if (ar.failed()) {
+        log.error("Could not start the Prometheus exporter on " + serverOptions.getHost() + ":" + serverOptions.getPort(), ar.cause());
+      }
+      if (completionHandler != null) {
+        completionHandler.handle(ar.mapEmpty());
+      }
+    });
+  }
+
+  void close() {
+    if (server != null) {
+      server.close();
+      server = null;
+    }
+    scrapes.clear();
+    keys.clear();
+    deflaters.close();
+  }
+
+  /**
+   * @return the number of scrapes kept for the requests to come, each one with its chunks
+   */
+  int keptScrapes() {
+    return scrapes.size();
+  }
+
+  /**
+   * @param encoding the content coding of the chunks, {@code null} for the encoded ones
+   * @return the number of chunks held by the scrapes kept for the requests to come
+   */
+  int retainedChunks(String encoding) {
+    int retained = 0;
+    for (Scrape scrape : scrapes.values()) {
+      ScrapeChunks chunks = scrape.chunks(encoding);
+      if (chunks != null) {
+        retained += chunks.retained();
+      }
+    }
+    return retained;
+  }
+
+  @Override
+  public void handle(HttpServerRequest request) {
+    HttpServerResponse response = request.response();
+    if (!options.getExporterPath().equals(request.path())) {
+      response.setStatusCode(404).end();
+      return;
+    }
+    if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+      response.setStatusCode(405).putHeader(HttpHeaders.ALLOW, "GET, HEAD").end();
+      return;
+    }
+    ExpositionEncoder encoder = ExpositionEncoder.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+    response.putHeader(HttpHeaders.CONTENT_TYPE, encoder.contentType());
+    response.putHeader(VARY, ACCEPT_AND_ACCEPT_ENCODING);
+    String encoding = ScrapeCompressor.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    if (encoding != null) {
+      response.putHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    }
+    if (request.method() == HttpMethod.HEAD) {
+      response.end();
+      return;
+    }
+    response.setChunked(true);
+    List<String> names = request.params().getAll(NAME_PARAM);
+    List<String> prefixes = request.params().getAll(PREFIX_PARAM);
+    if (!names.isEmpty() || !prefixes.isEmpty()) {
+      Scrape partial = new Scrape(vertx.getOrCreateContext(), encoder, new SeriesKeys(),
+        collectorCache.filteredMetricFamilySamples(registry, names, prefixes));
+      partial.subscribe(response, encoding);
+      partial.handle(null);
+      return;
+    }
+    Scrape current = scrapes.get(encoder);
+    if (current == null || current.isStale(System.nanoTime()) || !current.canJoin(encoding)) {
+      SeriesKeys seriesKeys = keys.computeIfAbsent(encoder, e -> new SeriesKeys());
+      current = new Scrape(vertx.getOrCreateContext(), encoder, seriesKeys, registry.metricFamilySamples());
+      scrapes.put(encoder, current);
+      current.subscribe(response, encoding);
+      current.handle(null);
+    } else {
+      current.subscribe(response, encoding);
+    }
+  }
+
+  /**
+   * A collection of the registry: each run encodes at most one chunk, hands it to the subscribed responses, then
+   * yields to the event loop.
+   */
+  private class Scrape implements Handler<Void> {
+
+    private final Context context;
+    private final Enumeration<MetricFamilySamples> families;
+    private final ScrapeChunks chunks = new ScrapeChunks();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private ScrapeCompressor gzip;
+    private ScrapeCompressor deflate;
+    private final ExpositionEncoder encoder;
+    private final SeriesKeys keys;
+    private MetricFamilySamples family;
+    private int index;
+    private boolean done;
+    private boolean aborted;
+    private long completed;
+
+    Scrape(Context context, ExpositionEncoder encoder, SeriesKeys keys, Enumeration<MetricFamilySamples> families) {
+      this.context = context;
+      this.encoder = encoder;
+      this.keys = keys;
+      this.families = families;
+    }
+
+    /**
+     * @return whether a request must start a new scrape rather than getting the chunks of this one
+     */
+    boolean isStale(long now) {
+      return aborted || done && now - completed >= cacheMaxAge;
+    }
+
+    /**
+     * @return whether a request accepting {@code encoding} can still get all the chunks of this scrape, from the
+     * compressor of its coding when there is one
+     */
+    boolean canJoin(String encoding) {
+      ScrapeChunks joined = chunks(encoding);
+      return joined != null ? joined.isWhole() : chunks.isWhole();
+    }
+
+    /**
+     * @return the chunks of {@code encoding}, {@code null} when no request accepting it subscribed
+     */
+    ScrapeChunks chunks(String encoding) {
+      if (encoding == null) {
+        return chunks;
+      }
+      ScrapeCompressor compressor = ScrapeCompressor.GZIP.equals(encoding) ? gzip : deflate;
+      return compressor != null ? compressor.chunks() : null;
+    }
+
+    void subscribe(HttpServerResponse response, String encoding) {
+      Subscriber subscriber = new Subscriber(this, response, compressor(encoding));
+      subscribers.add(subscriber);
+      subscriber.pump();
+    }
+
+    /**
+     * @return the compressor of {@code encoding}, created on the first request accepting it and catching up with the
+     * chunks encoded so far one chunk per event loop task
+     */
+    private ScrapeCompressor compressor(String encoding) {
+      if (encoding == null) {
+        return null;
+      }
+      boolean isGzip = ScrapeCompressor.GZIP.equals(encoding);
+      ScrapeCompressor compressor = isGzip ? gzip : deflate;
+      if (compressor == null) {
+        compressor = new ScrapeCompressor(deflaters, encoding);
+        if (isGzip) {
+          gzip = compressor;
+        } else {
+          deflate = compressor;
+        }
+        if (compressor.isBehind(chunks, done)) {
+          ScrapeCompressor catchingUp = compressor;
+          context.runOnContext(v -> catchUp(catchingUp));
+        }
+      }
+      return compressor;
+    }
+
+    /**
+     * Compress the next chunk the encoding did not hand to {@code compressor}, then yield to the event loop until it
+     * is caught up.
+     */
+    private void catchUp(ScrapeCompressor compressor) {
+      if (!compressor.isBehind(chunks, done)) {
+        return;
+      }
+      compressor.compressNext(chunks, done);
+      for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+        if (subscriber.compressor == compressor) {
+          subscriber.pump();
+        }
+      }
+      if (compressor.isBehind(chunks, done)) {
+        context.runOnContext(v -> catchUp(compressor));
+      }
+    }
+
+    /**
+     * Release the chunks every subscriber and compressor got, and the compressed chunks every subscriber of their
+     * compressor got, unless the scrape is cached for the requests to come.
+     */
+    void releaseConsumed() {
+      if (cacheMaxAge > 0 && scrapes.get(encoder) == this) {
+        return;
+      }
+      int consumed = chunks.size();
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.compressor == null) {
+          consumed = Math.min(consumed, subscriber.index);
+        }
+      }
+      if (gzip != null) {
+        consumed = Math.min(consumed, gzip.consumed());
+      }
+      if (deflate != null) {
+        consumed = Math.min(consumed, deflate.consumed());
+      }
+      chunks.releaseBefore(consumed);
+      releaseConsumed(gzip);
+      releaseConsumed(deflate);
+    }
+
+    private void releaseConsumed(ScrapeCompressor compressor) {
+      if (compressor == null) {
+        return;
+      }
+      ScrapeChunks compressed = compressor.chunks();
+      int consumed = compressed.size();
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.compressor == compressor) {
+          consumed = Math.min(consumed, subscriber.index);
+        }
+      }
+      compressed.releaseBefore(consumed);
+    }
+
+    private void expire() {
+      if (scrapes.remove(encoder, this)) {
+        releaseConsumed();
+      }
+    }
+
+    private void abort() {
+      aborted = true;
+      keys.aborted();
+      if (gzip != null) {
+        gzip.release();
+      }
+      if (deflate != null) {
+        deflate.release();
+      }
+    }
+
+    @Override
+    public void handle(Void v) {
+      if (subscribers.isEmpty() && (cacheMaxAge == 0 || scrapes.get(encoder) != this)) {
+        // Nobody is left to get it
+        abort();
+        return;
+      }
+      // Not pooled: Buffer.buffer(ByteBuf) wraps it in an unreleasable buffer and each response writes a duplicate of
+      // it, so a pooled buffer would never go back to its pool. The chunk is garbage collected once no subscriber or
+      // cached scrape references it
+      ByteBuf buf = Unpooled.buffer(CHUNK_SIZE + CHUNK_SIZE / 4);
+      try {
+        done = fill(buf);
+      } catch (RuntimeException e) {
+        abort();
+        log.error("Failed to encode metrics", e);
+        for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+          subscriber.response.close();
+        }
+        subscribers.clear();
+        return;
+      }
+      chunks.add(Buffer.buffer(buf));
+      // A compressor catching up gets one more chunk per task, the encoded one or an older one
+      if (gzip != null) {
+        gzip.compressNext(chunks, done);
+      }
+      if (deflate != null) {
+        deflate.compressNext(chunks, done);
+      }
+      if (done) {
+        completed = System.nanoTime();
+        keys.completed();
+        if (cacheMaxAge == 0) {
+          scrapes.remove(encoder, this);
+        } else if (scrapes.get(encoder) == this) {
+          vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(cacheMaxAge)), id -> expire());
+        }
+      }
+      for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+        subscriber.pump();
+      }
+      if (!done) {
+        context.runOnContext(this);
+      }
+    }
+
+    private boolean fill(ByteBuf buf) {
+      while (buf.writerIndex() < CHUNK_SIZE) {
+        if (family != null && index < family.samples.size()) {
+          index = encoder.writeSamples(buf, family, index, keys);
+        } else if (families.hasMoreElements()) {
+          family = families.nextElement();
+          index = 0;
+          encoder.writeHeader(buf, family, keys);
+        } else {
+          encoder.writeFooter(buf);
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A response getting the chunks of a scrape, as fast as it writes them.
+   */
+  private static class Subscriber {
+
+    private final Scrape scrape;
+    private final HttpServerResponse response;
+    private final ScrapeCompressor compressor;
+    private int index;
+    private boolean paused;
+
+    Subscriber(Scrape scrape, HttpServerResponse response, ScrapeCompressor compressor) {
+      this.scrape = scrape;
+      this.response = response;
+      this.compressor = compressor;
+      response.closeHandler(v -> {
+        scrape.subscribers.remove(this);
+        scrape.releaseConsumed();
+      });
+      response.drainHandler(v -> {
+        paused = false;
+        pump();
+      });
+    }
+
+    void pump() {
+      ScrapeChunks chunks = compressor != null ? compressor.chunks() : scrape.chunks;
+      while (!paused && index < chunks.size()) {
+        Buffer chunk = chunks.get(index++);
+        if ((compressor != null ? compressor.isDone() : scrape.done) && index == chunks.size()) {
+          scrape.subscribers.remove(this);
+          response.end(chunk);
+          break;
+        }
+        response.write(chunk);
+        paused = response.writeQueueFull();
+      }
+      scrape.releaseConsumed();
+    }
+  }
+}
@@ -19,7 +19,6 @@ package io.vertx.ext.dropwizard.impl;
 import java.util.LinkedHashMap;
 import java.util.function.BiConsumer;
 
-import io.prometheus.client.Histogram;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpClientResponse;
@@ -30,7 +29,7 @@ import io.vertx.core.spi.metrics.HttpClientMetrics;
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  */
-class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientMetrics<RequestMetric, Void, Void, EndpointMetric, Histogram.Timer> {
+class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientMetrics<RequestMetric, Void, SocketMetric, EndpointMetric, Long> {
 
   private final HttpClientReporter clientReporter;
   private final int maxPoolSize;
@@ -40,7 +39,7 @@ class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientM
                               HttpClientOptions options,
                               LinkedHashMap<String, String> labels,
                               BiConsumer<HttpClientReporter, Integer> onClose) {
-    super(clientReporter.registry(), clientReporter.baseName(), labels);
+    super(clientReporter.registry(), clientReporter.baseName(), labels, clientReporter.options);
     this.clientReporter = clientReporter;
     this.onClose = onClose;
     clientReporter.incMaxPoolSize(maxPoolSize = options.getMaxPoolSize());
@@ -53,34 +52,37 @@ class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientM
 
   @Override
   public void closeEndpoint(String host, int port, EndpointMetric endpointMetric) {
+    if (endpointMetric != null) {
+      endpointMetric.close();
+    }
   }
 
   @Override
-  public Histogram.Timer enqueueRequest(EndpointMetric endpointMetric) {
+  public Long enqueueRequest(EndpointMetric endpointMetric) {
     return endpointMetric.enqueued();
   }
 
   @Override
-  public void dequeueRequest(EndpointMetric endpointMetric, Histogram.Timer timer) {
-    endpointMetric.dequeued(timer);
+  public void dequeueRequest(EndpointMetric endpointMetric, Long enqueued) {
+    endpointMetric.dequeued(enqueued);
   }
 
   @Override
-  public void endpointConnected(EndpointMetric endpointMetric,Void socketMetric) {
+  public void endpointConnected(EndpointMetric endpointMetric, SocketMetric socketMetric) {
     if (endpointMetric != null) {
       endpointMetric.incConnections();
     }
   }
 
   @Override
-  public void endpointDisconnected(EndpointMetric endpointMetric, Void socketMetric) {
+  public void endpointDisconnected(EndpointMetric endpointMetric, SocketMetric socketMetric) {
     if (endpointMetric != null) {
       endpointMetric.decConnections();
     }
   }
 
   @Override
-  public RequestMetric requestBegin(EndpointMetric endpointMetric, Void socketMetric, SocketAddress localAddress, SocketAddress remoteAddress, HttpClientRequest request) {
+  public RequestMetric requestBegin(EndpointMetric endpointMetric, SocketMetric socketMetric, SocketAddress localAddress, SocketAddress remoteAddress, HttpClientRequest request) {
     if (endpointMetric != null) {
       endpointMetric.incInUse();
     }
@@ -90,22 +92,20 @@ class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientM
   @Override
   public void requestEnd(RequestMetric requestMetric) {
     if (requestMetric.endpointMetric != null) {
-      requestMetric.endpointMetric.startTtfb();
+      requestMetric.requestEnd = clientReporter.clock.nanoTime();
     }
   }
 
   @Override
   public void responseBegin(RequestMetric requestMetric, HttpClientResponse response) {
     if (requestMetric.endpointMetric != null) {
-      requestMetric.endpointMetric.endTtfb();
+      requestMetric.endpointMetric.observeTtfb(requestMetric);
     }
   }
 
   @Override
-  public RequestMetric responsePushed(EndpointMetric endpointMetric, Void socketMetric, SocketAddress localAddress, SocketAddress remoteAddress, HttpClientRequest request) {
-    if (endpointMetric != null) {
-      endpointMetric.incInUse();
-    }
+  public RequestMetric responsePushed(EndpointMetric endpointMetric, SocketMetric socketMetric, SocketAddress localAddress, SocketAddress remoteAddress, HttpClientRequest request) {
+    // Counted in use by requestBegin
     return requestBegin(endpointMetric, socketMetric, localAddress, remoteAddress, request);
   }
 
@@ -120,7 +120,7 @@ class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientM
   }
 
   @Override
-  public Void connected(EndpointMetric endpointMetric, Void socketMetric, WebSocket webSocket) {
+  public Void connected(EndpointMetric endpointMetric, SocketMetric socketMetric, WebSocket webSocket) {
     clientReporter.webSocketConnected();
     return null;
   }
@@ -131,27 +131,27 @@ class PrometheusHttpClientMetrics extends AbstractMetrics implements HttpClientM
   }
 
   @Override
-  public Void connected(SocketAddress remoteAddress, String remoteName) {
+  public SocketMetric connected(SocketAddress remoteAddress, String remoteName) {
     return clientReporter.connected(remoteAddress, remoteName);
   }
 
   @Override
-  public void disconnected(Void socketMetric, SocketAddress remoteAddress) {
+  public void disconnected(SocketMetric socketMetric, SocketAddress remoteAddress) {
     clientReporter.disconnected(socketMetric, remoteAddress);
   }
 
   @Override
-  public void bytesRead(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
+  public void bytesRead(SocketMetric socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
     clientReporter.bytesRead(socketMetric, remoteAddress, numberOfBytes);
   }
 
   @Override
-  public void bytesWritten(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
+  public void bytesWritten(SocketMetric socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
     clientReporter.bytesWritten(socketMetric, remoteAddress, numberOfBytes);
   }
 
   @Override
-  public void exceptionOccurred(Void socketMetric, SocketAddress remoteAddress, Throwable t) {
+  public void exceptionOccurred(SocketMetric socketMetric, SocketAddress remoteAddress, Throwable t) {
     clientReporter.exceptionOccurred(socketMetric, remoteAddress, t);
   }
 
@@ -17,6 +17,7 @@
 package io.vertx.ext.dropwizard.impl;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
@@ -24,25 +25,37 @@ import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.core.spi.metrics.TCPMetrics;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.Match;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  */
-class PrometheusTCPMetrics extends AbstractMetrics implements TCPMetrics<Void> {
+class PrometheusTCPMetrics extends AbstractMetrics implements TCPMetrics<SocketMetric> {
 
-  private final Histogram requests;
-  private final Counter responses;
-  private final Gauge connections;
+  private static final double NANOS_PER_SECOND = 1E9;
+
+  private final Family<Histogram.Child> requests;
+  private final Family<Counter.Child> responses;
+  // Acquired by each open connection, the child of a remote is removed along with its last connection
+  private final Family<Gauge.Child> connections;
 // FIXME  private final Timer connections;
-  private final Histogram bytesRead;
-  private final Histogram bytesWritten;
-  private final Counter exceptions;
-  private final Gauge webSockets;
+  private final Family<Histogram.Child> bytesRead;
+  private final Family<Histogram.Child> bytesWritten;
+  private final Family<Counter.Child> bytesReadTotal;
+  private final Family<Counter.Child> bytesWrittenTotal;
+  private final Family<Counter.Child> exceptions;
+  private final Family<Gauge.Child> webSockets;
+  private final Matcher uriMatcher;
+  private final RemoteLabeler remoteLabeler;
 
   protected volatile boolean closed;
 
-  PrometheusTCPMetrics(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> labels) {
-    super(registry, baseName, labels);
+  PrometheusTCPMetrics(CollectorRegistry registry, String baseName, LinkedHashMap<String, String> labels,
+                       DropwizardMetricsOptions options, List<Match> monitoredUris, RemoteLabeler remoteLabeler) {
+    super(registry, baseName, labels, options);
+    uriMatcher = new Matcher(monitoredUris);
+    this.remoteLabeler = remoteLabeler;
     requests = histogram("requests", "method", "uri");
     responses = counter("responses", "code");
     connections = gauge("connections", "remote");
@@ -50,6 +63,13 @@ class PrometheusTCPMetrics extends AbstractMetrics implements TCPMetrics<Void> {
     exceptions = counter("exceptions", "remote", "name");
     bytesRead = histogram("bytes_read", "remote");
     bytesWritten = histogram("bytes_written", "remote");
+    if (options.isAggregateBytesPerConnection()) {
+      bytesReadTotal = counter("bytes_read_total", "remote");
+      bytesWrittenTotal = counter("bytes_written_total", "remote");
+    } else {
+      bytesReadTotal = null;
+      bytesWrittenTotal = null;
+    }
     webSockets = gauge("websockets");
   }
 
@@ -64,49 +84,104 @@ class PrometheusTCPMetrics extends AbstractMetrics implements TCPMetrics<Void> {
   }
 
   @Override
-  public Void connected(SocketAddress remoteAddress, String remoteName) {
+  public SocketMetric connected(SocketAddress remoteAddress, String remoteName) {
     if (closed) {
       return null;
     }
-    labels(connections, addressName(remoteAddress)).inc();
-    return null;
+    String remote = remoteLabeler.label(remoteAddress);
+    // Acquired first, so that the children cannot be removed by a concurrent disconnection once resolved
+    Gauge.Child connection = connections.acquire(remote);
+    SocketMetric socketMetric;
+    if (bytesReadTotal != null) {
+      socketMetric = new SocketMetric(remote,
+        connection,
+        labels(bytesRead, remote),
+        labels(bytesWritten, remote),
+        labels(bytesReadTotal, remote),
+        labels(bytesWrittenTotal, remote));
+    } else {
+      socketMetric = new SocketMetric(remote,
+        connection,
+        labels(bytesRead, remote),
+        labels(bytesWritten, remote));
+    }
+    socketMetric.connections.inc();
+    return socketMetric;
   }
 
   @Override
-  public void disconnected(Void ctx, SocketAddress remoteAddress) {
-    if (closed) {
+  public void disconnected(SocketMetric socketMetric, SocketAddress remoteAddress) {
+    if (closed || socketMetric == null) {
       return;
     }
-    labels(connections, addressName(remoteAddress)).dec();
+    socketMetric.connections.dec();
+    if (socketMetric.isAggregated()) {
+      long readBytes = socketMetric.takeReadBytes();
+      long writtenBytes = socketMetric.takeWrittenBytes();
+      socketMetric.bytesRead.observe(readBytes);
+      socketMetric.bytesWritten.observe(writtenBytes);
+      socketMetric.bytesReadTotal.inc(readBytes);
+      socketMetric.bytesWrittenTotal.inc(writtenBytes);
+    }
+    // The gauge is back to zero once its last connection is released, the counters and histograms are kept until
+    // they expire, so that the traffic of a connection closed between two scrapes is still exported
+    connections.release(socketMetric.remote);
 // FIXME    connections.update(System.nanoTime() - ctx, TimeUnit.NANOSECONDS);
   }
 
   @Override
-  public void bytesRead(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-    if (closed) {
+  public void bytesRead(SocketMetric socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
+    if (closed || socketMetric == null) {
       return;
     }
-    labels(bytesRead, addressName(remoteAddress)).observe(numberOfBytes);
+    if (socketMetric.isAggregated()) {
+      socketMetric.addReadBytes(numberOfBytes);
+    } else {
+      socketMetric.bytesRead.observe(numberOfBytes);
+    }
   }
 
   @Override
-  public void bytesWritten(Void socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-    if (closed) {
+  public void bytesWritten(SocketMetric socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
+    if (closed || socketMetric == null) {
       return;
     }
-    labels(bytesWritten, addressName(remoteAddress)).observe(numberOfBytes);
+    if (socketMetric.isAggregated()) {
+      socketMetric.addWrittenBytes(numberOfBytes);
+    } else {
+      socketMetric.bytesWritten.observe(numberOfBytes);
+    }
   }
 
   @Override
-  public void exceptionOccurred(Void socketMetric, SocketAddress remoteAddress, Throwable t) {
+  public void exceptionOccurred(SocketMetric socketMetric, SocketAddress remoteAddress, Throwable t) {
     if (closed) {
       return;
     }
-    labels(exceptions, addressName(remoteAddress), t.getClass().toString()).inc();
+    String remote = socketMetric != null ? socketMetric.remote : remoteLabeler.label(remoteAddress);
+    labels(exceptions, remote, t.getClass().toString()).inc();
+  }
+
+  @Override
+  boolean isReferenced(Family<?> family, String[] values) {
+    // The open connections of a remote hold its children
+    return family != requests && family != responses && values.length > 0 && connections.isHeld(values[0]);
   }
 
   RequestMetric createRequestMetric(String method, String uri, EndpointMetric endpointMetric) {
-    return new RequestMetric(labels(requests, method, uri), endpointMetric);
+    return new RequestMetric(labels(requests, method, uriLabel(uri)), endpointMetric, clock.nanoTime());
+  }
+
+  private String uriLabel(String uri) {
+    // Keep the path only, monitored uris are matched against it
+    int idx = uri.indexOf('?');
+    String path = idx < 0 ? uri : uri.substring(0, idx);
+    if (uriMatcher.isEmpty()) {
+      // The series limit of the family bounds the paths
+      return path;
+    }
+    String label = uriMatcher.matches(path);
+    return label != null ? label : Matcher.OTHER;
   }
 
   void responseEnd(RequestMetric metric, int statusCode) {
@@ -116,10 +191,11 @@ class PrometheusTCPMetrics extends AbstractMetrics implements TCPMetrics<Void> {
     if (statusCode > 0) {
       labels(responses, String.valueOf(statusCode)).inc();
     }
-    metric.timer.observeDuration();
+    long duration = clock.nanoTime() - metric.requestBegin;
+    metric.requests.observe(duration / NANOS_PER_SECOND);
     if (metric.endpointMetric != null) {
       metric.endpointMetric.decInUse();
-      metric.endpointMetric.observeUsage();
+      metric.endpointMetric.observeUsage(duration);
     }
   }
 
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+/**
+ * Encodes metric family samples as length delimited {@code io.prometheus.client.MetricFamily} protocol buffer
+ * messages, as defined by the Prometheus {@code metrics.proto}, without depending on the protobuf runtime.
+ * <p>
+ * The samples of a histogram or summary child are gathered in a single {@code Metric}. The {@code +Inf} bucket is not
+ * written, its count being the sample count of the histogram. Messages are prefixed by their size, so each family is
+ * walked once for its size before its header is written, the labels of each {@code Metric} being encoded once in the
+ * {@link SeriesKeys}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class ProtobufEncoder implements ExpositionEncoder {
+
+  static final String MESSAGE = "io.prometheus.client.MetricFamily";
+  static final String CONTENT_TYPE = "application/vnd.google.protobuf; proto=" + MESSAGE + "; encoding=delimited";
+
+  static final ProtobufEncoder INSTANCE = new ProtobufEncoder();
+
+  private static final int VARINT = 0;
+  private static final int FIXED64 = 1;
+  private static final int LENGTH_DELIMITED = 2;
+
+  // MetricFamily
+  private static final int FAMILY_NAME = 1;
+  private static final int FAMILY_HELP = 2;
+  private static final int FAMILY_TYPE = 3;
+  private static final int FAMILY_METRIC = 4;
+  // Metric
+  private static final int METRIC_LABEL = 1;
+  private static final int METRIC_GAUGE = 2;
+  private static final int METRIC_COUNTER = 3;
+  private static final int METRIC_SUMMARY = 4;
+  private static final int METRIC_UNTYPED = 5;
+  private static final int METRIC_HISTOGRAM = 7;
+  // LabelPair
+  private static final int LABEL_NAME = 1;
+  private static final int LABEL_VALUE = 2;
+  // Gauge, Counter and Untyped
+  private static final int VALUE = 1;
+  // Summary and Histogram
+  private static final int SAMPLE_COUNT = 1;
+  private static final int SAMPLE_SUM = 2;
+  private static final int SUMMARY_QUANTILE = 3;
+  private static final int HISTOGRAM_BUCKET = 3;
+  // Quantile
+  private static final int QUANTILE_QUANTILE = 1;
+  private static final int QUANTILE_VALUE = 2;
+  // Bucket
+  private static final int BUCKET_CUMULATIVE_COUNT = 1;
+  private static final int BUCKET_UPPER_BOUND = 2;
+
+  private static final int DOUBLE_FIELD_SIZE = 9;
+  private static final int QUANTILE_SIZE = 2 * DOUBLE_FIELD_SIZE;
+
+  // Parsed bucket bounds and quantiles
+  private static final int MAX_BOUNDS = 1024;
+  private static final Map<String, Double> BOUNDS = new ConcurrentHashMap<>();
+
+  @Override
+  public String contentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  public void writeHeader(ByteBuf buf, MetricFamilySamples family, SeriesKeys keys) {
+    int size = stringFieldSize(family.name) + stringFieldSize(family.help) + 2;
+    List<MetricFamilySamples.Sample> samples = family.samples;
+    for (int index = 0, count = samples.size(); index < count; ) {
+      int end = metricEnd(family, index);
+      size += fieldSize(metricSize(family, index, end, keys));
+      index = end;
+    }
+    writeVarint(buf, size);
+    writeString(buf, FAMILY_NAME, family.name);
+    writeString(buf, FAMILY_HELP, family.help);
+    writeTag(buf, FAMILY_TYPE, VARINT);
+    writeVarint(buf, typeNumber(family.type));
+  }
+
+  @Override
+  public int writeSamples(ByteBuf buf, MetricFamilySamples family, int index, SeriesKeys keys) {
+    int end = metricEnd(family, index);
+    String excluded = excludedLabel(family.type);
+    int valueSize = excluded == null ? DOUBLE_FIELD_SIZE : distributionSize(family, index, end);
+    writeTag(buf, FAMILY_METRIC, LENGTH_DELIMITED);
+    byte[] labels = labels(family, index, end, keys);
+    writeVarint(buf, labels.length + fieldSize(valueSize));
+    buf.writeBytes(labels);
+    MetricFamilySamples.Sample first = family.samples.get(index);
+    switch (family.type) {
+      case SUMMARY:
+      case HISTOGRAM:
+        boolean histogram = family.type == Collector.Type.HISTOGRAM;
+        writeTag(buf, histogram ? METRIC_HISTOGRAM : METRIC_SUMMARY, LENGTH_DELIMITED);
+        writeVarint(buf, valueSize);
+        double sum = 0;
+        long count = 0;
+        for (int i = index; i < end; i++) {
+          MetricFamilySamples.Sample sample = family.samples.get(i);
+          if (hasSuffix(sample, family, "_count")) {
+            count = (long) sample.value;
+          } else if (hasSuffix(sample, family, "_sum")) {
+            sum = sample.value;
+          }
+        }
+        writeTag(buf, SAMPLE_COUNT, VARINT);
+        writeVarint(buf, count);
+        writeDouble(buf, SAMPLE_SUM, sum);
+        for (int i = index; i < end; i++) {
+          MetricFamilySamples.Sample sample = family.samples.get(i);
+          String bound = labelValue(sample, excluded);
+          if (bound == null || bound.equals("+Inf")) {
+            continue;
+          }
+          if (histogram) {
+            writeTag(buf, HISTOGRAM_BUCKET, LENGTH_DELIMITED);
+            writeVarint(buf, bucketSize(sample));
+            writeTag(buf, BUCKET_CUMULATIVE_COUNT, VARINT);
+            writeVarint(buf, (long) sample.value);
+            writeDouble(buf, BUCKET_UPPER_BOUND, parseBound(bound));
+          } else {
+            writeTag(buf, SUMMARY_QUANTILE, LENGTH_DELIMITED);
+            writeVarint(buf, QUANTILE_SIZE);
+            writeDouble(buf, QUANTILE_QUANTILE, parseBound(bound));
+            writeDouble(buf, QUANTILE_VALUE, sample.value);
+          }
+        }
+        break;
+      default:
+        writeTag(buf, valueField(family.type), LENGTH_DELIMITED);
+        writeVarint(buf, DOUBLE_FIELD_SIZE);
+        writeDouble(buf, VALUE, first.value);
+        break;
+    }
+    return end;
+  }
+
+  /**
+   * @return the index following the samples of the {@code Metric} starting at {@code index}: a histogram or summary
+   * child has several samples, having the same labels but the bucket or quantile one
+   */
+  private static int metricEnd(MetricFamilySamples family, int index) {
+    String excluded = excludedLabel(family.type);
+    if (excluded == null) {
+      return index + 1;
+    }
+    List<MetricFamilySamples.Sample> samples = family.samples;
+    MetricFamilySamples.Sample first = samples.get(index);
+    int end = index + 1;
+    while (end < samples.size() && sameLabels(first, samples.get(end), excluded)) {
+      end++;
+    }
+    return end;
+  }
+
+  private static int metricSize(MetricFamilySamples family, int index, int end, SeriesKeys keys) {
+    int valueSize = excludedLabel(family.type) == null ? DOUBLE_FIELD_SIZE : distributionSize(family, index, end);
+    return labels(family, index, end, keys).length + fieldSize(valueSize);
+  }
+
+  /**
+   * @return the encoded {@code LabelPair} fields of the {@code Metric} of the samples from {@code index} to
+   * {@code end}, i.e. the labels of its sample which is not a bucket or a quantile, such as its count
+   */
+  private static byte[] labels(MetricFamilySamples family, int index, int end, SeriesKeys keys) {
+    for (int i = index; i < end; i++) {
+      MetricFamilySamples.Sample sample = family.samples.get(i);
+      if (!TextFormatEncoder.isBucket(family, sample.labelNames)) {
+        byte[] key = keys.get(sample.labelNames, sample.labelValues);
+        if (key == null) {
+          key = encodeLabels(sample, sample.labelValues.size(), keys);
+          keys.put(sample.labelNames, sample.labelValues, key);
+        }
+        return key;
+      }
+    }
+    MetricFamilySamples.Sample first = family.samples.get(index);
+    int size = first.labelValues.size() - 1;
+    byte[] key = keys.last(first.labelNames, first.labelValues, size);
+    if (key == null) {
+      key = encodeLabels(first, size, keys);
+      keys.last(first.labelNames, first.labelValues, size, key);
+    }
+    return key;
+  }
+
+  private static byte[] encodeLabels(MetricFamilySamples.Sample sample, int size, SeriesKeys keys) {
+    ByteBuf scratch = keys.scratch();
+    for (int i = 0; i < size; i++) {
+      String name = sample.labelNames.get(i);
+      String value = sample.labelValues.get(i);
+      writeTag(scratch, METRIC_LABEL, LENGTH_DELIMITED);
+      writeVarint(scratch, stringFieldSize(name) + stringFieldSize(value));
+      writeString(scratch, LABEL_NAME, name);
+      writeString(scratch, LABEL_VALUE, value);
+    }
+    return keys.fromScratch();
+  }
+
+  /**
+   * @return the size of the {@code Histogram} or {@code Summary} message of the samples
+   */
+  private static int distributionSize(MetricFamilySamples family, int index, int end) {
+    String excluded = excludedLabel(family.type);
+    boolean histogram = family.type == Collector.Type.HISTOGRAM;
+    long count = 0;
+    int size = 0;
+    for (int i = index; i < end; i++) {
+      MetricFamilySamples.Sample sample = family.samples.get(i);
+      String bound = labelValue(sample, excluded);
+      if (bound != null) {
+        if (!bound.equals("+Inf")) {
+          size += fieldSize(histogram ? bucketSize(sample) : QUANTILE_SIZE);
+        }
+      } else if (hasSuffix(sample, family, "_count")) {
+        count = (long) sample.value;
+      }
+    }
+    return size + 1 + varintSize(count) + DOUBLE_FIELD_SIZE;
+  }
+
+  private static int bucketSize(MetricFamilySamples.Sample sample) {
+    return 1 + varintSize((long) sample.value) + DOUBLE_FIELD_SIZE;
+  }
+
+  private static boolean sameLabels(MetricFamilySamples.Sample first, MetricFamilySamples.Sample sample, String excluded) {
+    List<String> names1 = first.labelNames;
+    List<String> names2 = sample.labelNames;
+    int i = 0;
+    int j = 0;
+    while (true) {
+      if (i < names1.size() && names1.get(i).equals(excluded)) {
+        i++;
+      }
+      if (j < names2.size() && names2.get(j).equals(excluded)) {
+        j++;
+      }
+      if (i == names1.size() || j == names2.size()) {
+        return i == names1.size() && j == names2.size();
+      }
+      if (!names1.get(i).equals(names2.get(j)) || !first.labelValues.get(i).equals(sample.labelValues.get(j))) {
+        return false;
+      }
+      i++;
+      j++;
+    }
+  }
+
+  private static String labelValue(MetricFamilySamples.Sample sample, String name) {
+    List<String> names = sample.labelNames;
+    for (int i = names.size() - 1; i >= 0; i--) {
+      if (names.get(i).equals(name)) {
+        return sample.labelValues.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static boolean hasSuffix(MetricFamilySamples.Sample sample, MetricFamilySamples family, String suffix) {
+    return sample.name.length() == family.name.length() + suffix.length()
+      && sample.name.endsWith(suffix) && sample.name.startsWith(family.name);
+  }
+
+  private static String excludedLabel(Collector.Type type) {
+    switch (type) {
+      case HISTOGRAM:
+        return "le";
+      case SUMMARY:
+        return "quantile";
+      default:
+        return null;
+    }
+  }
+
+  private static int valueField(Collector.Type type) {
+    switch (type) {
+      case COUNTER:
+        return METRIC_COUNTER;
+      case GAUGE:
+        return METRIC_GAUGE;
+      default:
+        return METRIC_UNTYPED;
+    }
+  }
+
+  private static int typeNumber(Collector.Type type) {
+    switch (type) {
+      case COUNTER:
+        return 0;
+      case GAUGE:
+        return 1;
+      case SUMMARY:
+        return 2;
+      case HISTOGRAM:
+        return 4;
+      default:
+        return 3;
+    }
+  }
+
+  /**
+   * Buckets and quantiles are the same for all the children of a family, and usually for several families.
+   */
+  private static double parseBound(String value) {
+    Double bound = BOUNDS.get(value);
+    if (bound == null) {
+      bound = parseDouble(value);
+      if (BOUNDS.size() < MAX_BOUNDS) {
+        BOUNDS.put(value, bound);
+      }
+    }
+    return bound;
+  }
+
+  private static double parseDouble(String value) {
+    switch (value) {
+      case "+Inf":
+        return Double.POSITIVE_INFINITY;
+      case "-Inf":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        try {
+          return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+          return Double.NaN;
+        }
+    }
+  }
+
+  private static int fieldSize(int messageSize) {
+    return 1 + varintSize(messageSize) + messageSize;
+  }
+
+  private static int stringFieldSize(String s) {
+    return fieldSize(utf8Length(s));
+  }
+
+  static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  static void writeVarint(ByteBuf buf, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buf.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buf.writeByte((int) value);
+  }
+
+  private static void writeTag(ByteBuf buf, int field, int wireType) {
+    buf.writeByte(field << 3 | wireType);
+  }
+
+  private static void writeDouble(ByteBuf buf, int field, double value) {
+    writeTag(buf, field, FIXED64);
+    buf.writeLongLE(Double.doubleToRawLongBits(value));
+  }
+
+  private static void writeString(ByteBuf buf, int field, String s) {
+    writeTag(buf, field, LENGTH_DELIMITED);
+    writeVarint(buf, utf8Length(s));
+    writeUtf8(buf, s);
+  }
+
+  /**
+   * @return the length of {@code s} written by {@link #writeUtf8}
+   */
+  static int utf8Length(String s) {
+    int len = s.length();
+    int ascii = asciiPrefix(s);
+    if (ascii == len) {
+      return len;
+    }
+    int length = ascii;
+    for (int i = ascii; i < len; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Write {@code s} as UTF-8, unpaired surrogates being replaced by {@code ?}.
+   */
+  static void writeUtf8(ByteBuf buf, String s) {
+    int len = s.length();
+    if (asciiPrefix(s) == len) {
+      ByteBufUtil.writeAscii(buf, s);
+      return;
+    }
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        buf.writeByte(c);
+      } else if (c < 0x800) {
+        buf.writeByte(0xC0 | (c >> 6));
+        buf.writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buf.writeByte(0xF0 | (cp >> 18));
+        buf.writeByte(0x80 | ((cp >> 12) & 0x3F));
+        buf.writeByte(0x80 | ((cp >> 6) & 0x3F));
+        buf.writeByte(0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buf.writeByte('?');
+      } else {
+        buf.writeByte(0xE0 | (c >> 12));
+        buf.writeByte(0x80 | ((c >> 6) & 0x3F));
+        buf.writeByte(0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private static int asciiPrefix(String s) {
+    int i = 0;
+    for (int len = s.length(); i < len && s.charAt(i) < 0x80; i++) {
+    }
+    return i;
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.RemoteLabelStrategy;
+
+/**
+ * Computes the {@code remote} label value of a connection according to a {@link RemoteLabelStrategy}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class RemoteLabeler {
+
+  /**
+   * Client connections are labelled by the address of the server they connect to.
+   */
+  static final RemoteLabeler CLIENT = new RemoteLabeler(RemoteLabelStrategy.ADDRESS, 0, 0);
+
+  private static final int IPV6_PREFIX = 64;
+
+  static final long TOP_HOSTS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+  static final int TOP_HOST_MIN_CONNECTIONS = 10;
+  private static final int COUNTERS_PER_TOP_HOST = 4;
+
+  private final RemoteLabelStrategy strategy;
+  private final int cidrPrefix;
+  private final int topK;
+  // Space-saving counters of the connections opened per host, for TOP_K: the count and the overestimation inherited
+  // from the host it replaced
+  private final Map<String, long[]> counters;
+  // The hosts labelled with their name until the next snapshot, guarded by the counters
+  private Set<String> topHosts = Collections.emptySet();
+  private long snapshotTime;
+  private boolean counting;
+  Clock clock = Clock.SYSTEM;
+
+  RemoteLabeler(RemoteLabelStrategy strategy, int cidrPrefix, int topK) {
+    this.strategy = strategy;
+    this.cidrPrefix = Math.max(0, Math.min(32, cidrPrefix));
+    this.topK = Math.max(0, topK);
+    this.counters = strategy == RemoteLabelStrategy.TOP_K ? new HashMap<>() : null;
+  }
+
+  static RemoteLabeler server(DropwizardMetricsOptions options) {
+    return new RemoteLabeler(options.getRemoteLabelStrategy(), options.getRemoteLabelCidrPrefix(), options.getRemoteLabelTopK());
+  }
+
+  String label(SocketAddress address) {
+    if (address == null) {
+      return "?";
+    }
+    switch (strategy) {
+      case HOST:
+        return address.host();
+      case CIDR:
+        return network(address.host());
+      case TOP_K:
+        return topHost(address.host());
+      case NONE:
+        return "";
+      default:
+        return PrometheusTCPMetrics.addressName(address);
+    }
+  }
+
+  private String network(String host) {
+    if (host == null) {
+      return "?";
+    }
+    long ipv4 = parseIPv4(host);
+    if (ipv4 != -1) {
+      long mask = (0xFFFFFFFFL << (32 - cidrPrefix)) & 0xFFFFFFFFL;
+      long network = ipv4 & mask;
+      return (network >>> 24) + "." + ((network >>> 16) & 0xFF) + "." + ((network >>> 8) & 0xFF) + "." + (network & 0xFF) + "/" + cidrPrefix;
+    }
+    if (host.indexOf(':') >= 0) {
+      try {
+        // A literal, no name resolution happens
+        byte[] bytes = InetAddress.getByName(host).getAddress();
+        if (bytes.length == 16) {
+          for (int i = IPV6_PREFIX / 8; i < 16; i++) {
+            bytes[i] = 0;
+          }
+          return InetAddress.getByAddress(bytes).getHostAddress() + "/" + IPV6_PREFIX;
+        }
+      } catch (UnknownHostException ignore) {
+        // Not an address
+      }
+    }
+    // Host names and unix domain sockets
+    return host;
+  }
+
+  /**
+   * @return the address as an unsigned int, or -1 when {@code host} is not an IPv4 literal
+   */
+  static long parseIPv4(String host) {
+    long address = 0;
+    int octet = -1;
+    int dots = 0;
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      if (c >= '0' && c <= '9') {
+        octet = (octet == -1 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet != -1 && dots < 3) {
+        address = (address << 8) | octet;
+        octet = -1;
+        dots++;
+      } else {
+        return -1;
+      }
+    }
+    if (dots != 3 || octet == -1) {
+      return -1;
+    }
+    return (address << 8) | octet;
+  }
+
+  /**
+   * Space-saving heavy hitters: at most {@code topK} times {@link #COUNTERS_PER_TOP_HOST} hosts are counted, a new
+   * host replacing the least counted one and inheriting its count as an overestimation.
+   * <p>
+   * Only the hosts of the last snapshot keep their name, the others are {@link Matcher#OTHER}, so that the hosts
+   * churning between the counters never get a label. Every {@link #TOP_HOSTS_INTERVAL}, the snapshot is recomputed
+   * from the {@code topK} hosts with at least {@link #TOP_HOST_MIN_CONNECTIONS} connections without overestimation,
+   * and the counts are halved so that they follow the recent connections.
+   */
+  private String topHost(String host) {
+    if (host == null) {
+      return Matcher.OTHER;
+    }
+    synchronized (counters) {
+      count(host);
+      long now = clock.nanoTime();
+      if (!counting) {
+        counting = true;
+        snapshotTime = now;
+      } else if (now - snapshotTime >= TOP_HOSTS_INTERVAL) {
+        snapshot();
+        snapshotTime = now;
+      }
+      return topHosts.contains(host) ? host : Matcher.OTHER;
+    }
+  }
+
+  private void count(String host) {
+    long[] counter = counters.get(host);
+    if (counter != null) {
+      counter[0]++;
+      return;
+    }
+    if (counters.size() < topK * COUNTERS_PER_TOP_HOST) {
+      counters.put(host, new long[]{1, 0});
+      return;
+    }
+    String min = null;
+    long minCount = Long.MAX_VALUE;
+    for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+      if (entry.getValue()[0] < minCount) {
+        min = entry.getKey();
+        minCount = entry.getValue()[0];
+      }
+    }
+    if (min != null) {
+      counters.remove(min);
+      counters.put(host, new long[]{minCount + 1, minCount});
+    }
+  }
+
+  private void snapshot() {
+    List<Map.Entry<String, long[]>> candidates = new ArrayList<>();
+    for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+      if (entry.getValue()[0] - entry.getValue()[1] >= TOP_HOST_MIN_CONNECTIONS) {
+        candidates.add(entry);
+      }
+    }
+    candidates.sort((a, b) -> Long.compare(b.getValue()[0] - b.getValue()[1], a.getValue()[0] - a.getValue()[1]));
+    Set<String> snapshot = new HashSet<>();
+    for (int i = 0; i < Math.min(topK, candidates.size()); i++) {
+      snapshot.add(candidates.get(i).getKey());
+    }
+    topHosts = snapshot;
+    counters.values().removeIf(counter -> {
+      counter[0] /= 2;
+      counter[1] /= 2;
+      return counter[0] == 0;
+    });
+  }
+}
@@ -7,11 +7,15 @@ import io.prometheus.client.Histogram;
 */
 class RequestMetric {
 
-  final Histogram.Timer timer;
+  final Histogram.Child requests;
   final EndpointMetric endpointMetric;
+  final long requestBegin;
+  // When the request ended, in nanoseconds, or 0 when it has not ended yet
+  long requestEnd;
 
-  RequestMetric(Histogram.Child metric, EndpointMetric endpointMetric) {
-    this.timer = metric.startTimer();
+  RequestMetric(Histogram.Child metric, EndpointMetric endpointMetric, long requestBegin) {
+    this.requests = metric;
+    this.requestBegin = requestBegin;
     this.endpointMetric = endpointMetric;
   }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The chunks of a scrape, indexed from the first chunk of the scrape, whose first chunks can be released once every
+ * reader got them.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class ScrapeChunks {
+
+  private final List<Buffer> chunks = new ArrayList<>();
+  private int released;
+
+  void add(Buffer chunk) {
+    chunks.add(chunk);
+  }
+
+  /**
+   * @return the number of chunks added, the released ones included
+   */
+  int size() {
+    return released + chunks.size();
+  }
+
+  /**
+   * @return the number of chunks held, the ones not released
+   */
+  int retained() {
+    return chunks.size();
+  }
+
+  /**
+   * @return whether no chunk was released, so that a new reader can get them all
+   */
+  boolean isWhole() {
+    return released == 0;
+  }
+
+  /**
+   * @return the chunk at {@code index}, which must not be released
+   */
+  Buffer get(int index) {
+    return chunks.get(index - released);
+  }
+
+  /**
+   * Release the chunks before {@code index}.
+   */
+  void releaseBefore(int index) {
+    if (index > released) {
+      chunks.subList(0, index - released).clear();
+      released = index;
+    }
+  }
+}
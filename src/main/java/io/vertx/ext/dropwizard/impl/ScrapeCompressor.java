@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Compresses the chunks of a scrape as they are encoded, into chunks of about {@link PrometheusExporter#CHUNK_SIZE}
+ * compressed bytes, so that a compressed scrape is never held as a whole unless it is cached.
+ * <p>
+ * The {@link Deflater}s, which hold native memory and a large window, are taken from a {@link Pool} and given back
+ * once the scrape is compressed.
+ * <p>
+ * Each call compresses at most one chunk, so that a compressor created late for a scrape already encoded catches up
+ * one chunk per event loop task rather than holding the event loop for the whole scrape.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class ScrapeCompressor {
+
+  static final String GZIP = "gzip";
+  static final String DEFLATE = "deflate";
+
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  private static final int GZIP_TRAILER_SIZE = 8;
+
+  private final Pool pool;
+  private final boolean gzip;
+  private final CRC32 crc;
+  private final ScrapeChunks chunks = new ScrapeChunks();
+  private Deflater deflater;
+  private byte[] input;
+  private byte[] out = new byte[PrometheusExporter.CHUNK_SIZE];
+  private int pos;
+  private int consumed;
+  private boolean finished;
+  private boolean done;
+
+  ScrapeCompressor(Pool pool, String encoding) {
+    this.pool = pool;
+    this.gzip = GZIP.equals(encoding);
+    this.crc = gzip ? new CRC32() : null;
+    this.deflater = pool.acquire(gzip);
+    if (gzip) {
+      System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+      pos = GZIP_HEADER.length;
+    }
+  }
+
+  /**
+   * @return the compressed chunks so far, all of them once the scrape is done
+   */
+  ScrapeChunks chunks() {
+    return chunks;
+  }
+
+  /**
+   * @return the number of chunks of the source compressed so far
+   */
+  int consumed() {
+    return consumed;
+  }
+
+  /**
+   * @return whether the stream is finished, its last chunk written
+   */
+  boolean isDone() {
+    return done;
+  }
+
+  /**
+   * @return whether chunks of {@code source} are left to compress, or the stream to finish when {@code done}
+   */
+  boolean isBehind(ScrapeChunks source, boolean done) {
+    return !finished && (consumed < source.size() || done);
+  }
+
+  /**
+   * Compress the next chunk of {@code source} not compressed yet, and finish the stream when {@code done} and it was
+   * the last one.
+   */
+  void compressNext(ScrapeChunks source, boolean done) {
+    if (finished) {
+      return;
+    }
+    if (consumed < source.size()) {
+      ByteBuf chunk = source.get(consumed++).getByteBuf();
+      int length = chunk.readableBytes();
+      byte[] array;
+      int offset;
+      if (chunk.hasArray()) {
+        array = chunk.array();
+        offset = chunk.arrayOffset() + chunk.readerIndex();
+      } else {
+        if (input == null || input.length < length) {
+          input = new byte[length];
+        }
+        chunk.getBytes(chunk.readerIndex(), input, 0, length);
+        array = input;
+        offset = 0;
+      }
+      if (crc != null) {
+        crc.update(array, offset, length);
+      }
+      deflater.setInput(array, offset, length);
+      while (!deflater.needsInput()) {
+        deflate();
+      }
+    }
+    if (done && consumed == source.size()) {
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflate();
+      }
+      if (gzip) {
+        if (out.length - pos < GZIP_TRAILER_SIZE) {
+          emit();
+        }
+        writeIntLE(crc.getValue());
+        writeIntLE(deflater.getBytesRead());
+      }
+      emit();
+      release();
+      this.done = true;
+    }
+  }
+
+  /**
+   * Give the deflater back when the scrape is abandoned before it is done.
+   */
+  void release() {
+    finished = true;
+    if (deflater != null) {
+      pool.release(deflater, gzip);
+      deflater = null;
+      input = null;
+      out = null;
+    }
+  }
+
+  private void deflate() {
+    pos += deflater.deflate(out, pos, out.length - pos);
+    if (pos == out.length) {
+      emit();
+    }
+  }
+
+  private void emit() {
+    chunks.add(Buffer.buffer(Unpooled.wrappedBuffer(out, 0, pos)));
+    out = new byte[PrometheusExporter.CHUNK_SIZE];
+    pos = 0;
+  }
+
+  private void writeIntLE(long value) {
+    out[pos++] = (byte) value;
+    out[pos++] = (byte) (value >> 8);
+    out[pos++] = (byte) (value >> 16);
+    out[pos++] = (byte) (value >> 24);
+  }
+
+  /**
+   * An explicit coding takes precedence over {@code *}, a coding with {@code q=0} is refused, and identity is chosen
+   * when its quality is higher than the one of both {@code gzip} and {@code deflate}, {@code gzip} winning the ties.
+   *
+   * @return the preferred content coding of an {@code Accept-Encoding} header, {@code null} for identity
+   */
+  static String negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    // -1 when not listed
+    double gzipQ = -1;
+    double deflateQ = -1;
+    double identityQ = -1;
+    double anyQ = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      String name = coding;
+      double q = 1;
+      int semicolon = coding.indexOf(';');
+      if (semicolon >= 0) {
+        name = coding.substring(0, semicolon);
+        String param = coding.substring(semicolon + 1).trim();
+        if (param.startsWith("q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2).trim());
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        }
+      }
+      switch (name.trim().toLowerCase()) {
+        case GZIP:
+        case "x-gzip":
+          gzipQ = q;
+          break;
+        case DEFLATE:
+          deflateQ = q;
+          break;
+        case "identity":
+          identityQ = q;
+          break;
+        case "*":
+          anyQ = q;
+          break;
+        default:
+          break;
+      }
+    }
+    gzipQ = gzipQ >= 0 ? gzipQ : anyQ;
+    deflateQ = deflateQ >= 0 ? deflateQ : anyQ;
+    identityQ = identityQ >= 0 ? identityQ : anyQ;
+    String encoding = gzipQ >= deflateQ ? GZIP : DEFLATE;
+    double best = Math.max(gzipQ, deflateQ);
+    return best > 0 && best >= identityQ ? encoding : null;
+  }
+
+  /**
+   * Idle {@link Deflater}s, reset and kept for the next scrapes.
+   */
+  static class Pool {
+
+    private static final int MAX_IDLE = 4;
+
+    private final int level;
+    private final ArrayDeque<Deflater> gzip = new ArrayDeque<>();
+    private final ArrayDeque<Deflater> deflate = new ArrayDeque<>();
+    private boolean closed;
+
+    Pool(int level) {
+      this.level = level;
+    }
+
+    synchronized Deflater acquire(boolean nowrap) {
+      Deflater deflater = (nowrap ? gzip : deflate).poll();
+      return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    synchronized void release(Deflater deflater, boolean nowrap) {
+      ArrayDeque<Deflater> idle = nowrap ? gzip : deflate;
+      if (closed || idle.size() >= MAX_IDLE) {
+        deflater.end();
+      } else {
+        deflater.reset();
+        idle.add(deflater);
+      }
+    }
+
+    synchronized void close() {
+      closed = true;
+      for (Deflater deflater : gzip) {
+        deflater.end();
+      }
+      for (Deflater deflater : deflate) {
+        deflater.end();
+      }
+      gzip.clear();
+      deflate.clear();
+    }
+  }
+}
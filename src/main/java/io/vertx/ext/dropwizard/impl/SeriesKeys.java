@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * The encoded labels of the series of a registry, so that a scrape copies them rather than escaping and encoding the
+ * same label names and values again.
+ * <p>
+ * simpleclient collects the samples of a child with the label values list it keys the child with, so that list
+ * identifies the child across scrapes. Keys are kept from one scrape to the next: a key not used by a completed
+ * scrape belongs to a removed child and is dropped with it.
+ * <p>
+ * The samples of a histogram bucket or a summary quantile have their own label values lists, extended with the
+ * {@code le} or {@code quantile} label, they get the key of the previous sample of the same child instead.
+ * <p>
+ * Keys are specific to an encoder, and not thread safe: each format has its own, used by one scrape at a time.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class SeriesKeys {
+
+  private final IdentityHashMap<List<String>, Key> keys = new IdentityHashMap<>();
+  // Incremented by each completed scrape
+  private int generation;
+  private Key last;
+  private final ByteBuf scratch = Unpooled.buffer(256);
+
+  /**
+   * @return the key of the child collected with {@code labelNames} and {@code labelValues}, or {@code null}
+   */
+  byte[] get(List<String> labelNames, List<String> labelValues) {
+    Key key = keys.get(labelValues);
+    if (key == null || !key.matches(labelNames, labelValues, labelValues.size())) {
+      // New, changed since, or shared by another family
+      return null;
+    }
+    key.generation = generation;
+    last = key;
+    return key.bytes;
+  }
+
+  void put(List<String> labelNames, List<String> labelValues, byte[] bytes) {
+    last = new Key(labelNames, labelValues, labelValues.size(), bytes);
+    last.generation = generation;
+    keys.put(labelValues, last);
+  }
+
+  /**
+   * @return the key of the previous sample when its first {@code size} labels are the ones of the sample with
+   * {@code labelNames} and {@code labelValues}, or {@code null}
+   */
+  byte[] last(List<String> labelNames, List<String> labelValues, int size) {
+    Key key = last;
+    return key != null && key.matches(labelNames, labelValues, size) ? key.bytes : null;
+  }
+
+  void last(List<String> labelNames, List<String> labelValues, int size, byte[] bytes) {
+    last = new Key(labelNames, labelValues, size, bytes);
+  }
+
+  /**
+   * @return a cleared buffer to encode a key into
+   */
+  ByteBuf scratch() {
+    return scratch.clear();
+  }
+
+  /**
+   * @return the bytes encoded into the {@link #scratch()} buffer
+   */
+  byte[] fromScratch() {
+    byte[] bytes = new byte[scratch.readableBytes()];
+    scratch.getBytes(scratch.readerIndex(), bytes);
+    return bytes;
+  }
+
+  /**
+   * A scrape completed: the keys it did not use are dropped.
+   */
+  void completed() {
+    keys.values().removeIf(key -> key.generation != generation);
+    generation++;
+    last = null;
+  }
+
+  /**
+   * A scrape was aborted: the keys it did not get to are kept for the next one.
+   */
+  void aborted() {
+    last = null;
+  }
+
+  private static final class Key {
+
+    private final String[] labelNames;
+    private final String[] labelValues;
+    private final byte[] bytes;
+    private int generation;
+
+    private Key(List<String> labelNames, List<String> labelValues, int size, byte[] bytes) {
+      this.labelNames = labelNames.subList(0, size).toArray(new String[size]);
+      this.labelValues = labelValues.subList(0, size).toArray(new String[size]);
+      this.bytes = bytes;
+    }
+
+    /**
+     * @return whether the first {@code size} labels are the ones the key was encoded from, and the key has no other
+     */
+    private boolean matches(List<String> names, List<String> values, int size) {
+      if (labelValues.length != size || names.size() < size || values.size() < size) {
+        return false;
+      }
+      for (int i = 0; i < size; i++) {
+        // The labels of a child are copied, not rebuilt, comparing references is enough
+        if (labelNames[i] != names.get(i) || labelValues[i] != values.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Periodically removes the labelled series that stayed idle for longer than a time to live, so that the size of the
+ * registry follows the live traffic rather than the historic one.
+ * <p>
+ * The check runs every half time to live, with a minimum of {@link #MIN_INTERVAL} milliseconds, on a worker thread
+ * as its cost grows with the number of series.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class SeriesSweeper {
+
+  private static final Logger log = LoggerFactory.getLogger(SeriesSweeper.class);
+
+  static final long MIN_INTERVAL = 1000;
+
+  private final Vertx vertx;
+  private final long ttl;
+  private final Set<AbstractMetrics> metrics = ConcurrentHashMap.newKeySet();
+  private long timerId = -1;
+
+  SeriesSweeper(Vertx vertx, long ttl) {
+    this.vertx = vertx;
+    this.ttl = ttl;
+  }
+
+  void add(AbstractMetrics metrics) {
+    this.metrics.add(metrics);
+  }
+
+  void remove(AbstractMetrics metrics) {
+    this.metrics.remove(metrics);
+  }
+
+  synchronized void start() {
+    if (timerId == -1) {
+      timerId = vertx.setPeriodic(Math.max(MIN_INTERVAL, ttl / 2), id -> vertx.executeBlocking(future -> {
+        sweep(System.currentTimeMillis());
+        future.complete();
+      }, false, null));
+    }
+  }
+
+  /**
+   * @return the number of removed series
+   */
+  int sweep(long now) {
+    int removed = 0;
+    for (AbstractMetrics m : metrics) {
+      removed += m.expire(now, ttl);
+    }
+    if (removed > 0 && log.isDebugEnabled()) {
+      log.debug("Removed " + removed + " series idle for more than " + ttl + "ms");
+    }
+    return removed;
+  }
+
+  synchronized void close() {
+    if (timerId != -1) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+    metrics.clear();
+  }
+}
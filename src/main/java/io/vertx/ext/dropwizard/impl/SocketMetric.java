@@ -0,0 +1,73 @@
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * A connection, along with the children of its remote address, resolved once when it is established.
+ * <p>
+ * When bytes are aggregated per connection, they are summed atomically: Vert.x reports the bytes read from the event
+ * loop of the connection, but the bytes written from the thread writing to the socket, which can be a worker or any
+ * other thread.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class SocketMetric {
+
+  private static final AtomicLongFieldUpdater<SocketMetric> READ_BYTES =
+    AtomicLongFieldUpdater.newUpdater(SocketMetric.class, "readBytes");
+  private static final AtomicLongFieldUpdater<SocketMetric> WRITTEN_BYTES =
+    AtomicLongFieldUpdater.newUpdater(SocketMetric.class, "writtenBytes");
+
+  final String remote;
+  final Gauge.Child connections;
+  final Histogram.Child bytesRead;
+  final Histogram.Child bytesWritten;
+  final Counter.Child bytesReadTotal;
+  final Counter.Child bytesWrittenTotal;
+  private volatile long readBytes;
+  private volatile long writtenBytes;
+
+  SocketMetric(String remote, Gauge.Child connections, Histogram.Child bytesRead, Histogram.Child bytesWritten) {
+    this(remote, connections, bytesRead, bytesWritten, null, null);
+  }
+
+  SocketMetric(String remote, Gauge.Child connections, Histogram.Child bytesRead, Histogram.Child bytesWritten,
+               Counter.Child bytesReadTotal, Counter.Child bytesWrittenTotal) {
+    this.remote = remote;
+    this.connections = connections;
+    this.bytesRead = bytesRead;
+    this.bytesWritten = bytesWritten;
+    this.bytesReadTotal = bytesReadTotal;
+    this.bytesWrittenTotal = bytesWrittenTotal;
+  }
+
+  boolean isAggregated() {
+    return bytesReadTotal != null;
+  }
+
+  void addReadBytes(long numberOfBytes) {
+    READ_BYTES.addAndGet(this, numberOfBytes);
+  }
+
+  void addWrittenBytes(long numberOfBytes) {
+    WRITTEN_BYTES.addAndGet(this, numberOfBytes);
+  }
+
+  /**
+   * @return the bytes read since the last call
+   */
+  long takeReadBytes() {
+    return READ_BYTES.getAndSet(this, 0);
+  }
+
+  /**
+   * @return the bytes written since the last call
+   */
+  long takeWrittenBytes() {
+    return WRITTEN_BYTES.getAndSet(this, 0);
+  }
+}
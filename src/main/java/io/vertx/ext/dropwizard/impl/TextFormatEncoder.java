@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+/**
+ * Encodes metric family samples in the Prometheus text exposition format (version 0.0.4) directly into a
+ * {@link ByteBuf}, without going through an intermediate {@link java.io.Writer}.
+ * <p>
+ * Numbers are written digit by digit when a short decimal form of them reads back as the same double, which is the
+ * case of counts, most gauges and sums of round durations; only the others go through {@link Double#toString(double)}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class TextFormatEncoder implements ExpositionEncoder {
+
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  static final TextFormatEncoder INSTANCE = new TextFormatEncoder();
+
+  private static final byte[] HELP = "# HELP ".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TYPE = "# TYPE ".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] POSITIVE_INFINITY = "+Inf".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NEGATIVE_INFINITY = "-Inf".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+  // Doubles represent all the integers up to 2^53 exactly
+  private static final long MAX_EXACT = 1L << 53;
+  private static final int MAX_FRACTION_DIGITS = 9;
+  private static final double[] POWERS_OF_TEN = new double[MAX_FRACTION_DIGITS + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  @Override
+  public String contentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  public void writeHeader(ByteBuf buf, MetricFamilySamples family, SeriesKeys keys) {
+    String name = familyName(family);
+    buf.writeBytes(HELP);
+    writeAscii(buf, name);
+    buf.writeByte(' ');
+    writeEscaped(buf, family.help, escapeHelpQuotes());
+    buf.writeByte('\n');
+    buf.writeBytes(TYPE);
+    writeAscii(buf, name);
+    buf.writeByte(' ');
+    writeAscii(buf, typeName(family.type));
+    buf.writeByte('\n');
+  }
+
+  @Override
+  public int writeSamples(ByteBuf buf, MetricFamilySamples family, int index, SeriesKeys keys) {
+    MetricFamilySamples.Sample sample = family.samples.get(index);
+    writeSampleName(buf, family, sample);
+    List<String> names = sample.labelNames;
+    int size = names.size();
+    if (size > 0) {
+      boolean bucket = isBucket(family, names);
+      int childSize = bucket ? size - 1 : size;
+      buf.writeByte('{');
+      if (childSize > 0) {
+        buf.writeBytes(bucket ? bucketKey(family, index, keys) : key(sample, keys));
+        if (bucket) {
+          buf.writeByte(',');
+        }
+      }
+      if (bucket) {
+        writeLabel(buf, names.get(childSize), sample.labelValues.get(childSize));
+      }
+      buf.writeByte('}');
+    }
+    buf.writeByte(' ');
+    writeDouble(buf, sample.value);
+    buf.writeByte('\n');
+    return index + 1;
+  }
+
+  /**
+   * @return the encoded labels of {@code sample}
+   */
+  private static byte[] key(MetricFamilySamples.Sample sample, SeriesKeys keys) {
+    byte[] key = keys.get(sample.labelNames, sample.labelValues);
+    if (key == null) {
+      key = keys.last(sample.labelNames, sample.labelValues, sample.labelValues.size());
+      if (key == null) {
+        key = encodeKey(sample, sample.labelValues.size(), keys);
+      }
+      keys.put(sample.labelNames, sample.labelValues, key);
+    }
+    return key;
+  }
+
+  /**
+   * @return the encoded labels of the child of the bucket or quantile at {@code index}, its label excluded
+   */
+  private static byte[] bucketKey(MetricFamilySamples family, int index, SeriesKeys keys) {
+    MetricFamilySamples.Sample sample = family.samples.get(index);
+    int size = sample.labelValues.size() - 1;
+    byte[] key = keys.last(sample.labelNames, sample.labelValues, size);
+    if (key == null) {
+      // The first bucket of a child: its count follows, with the label values the child is collected with
+      for (int i = index + 1; i < family.samples.size(); i++) {
+        MetricFamilySamples.Sample child = family.samples.get(i);
+        if (!isBucket(family, child.labelNames)) {
+          key(child, keys);
+          key = keys.last(sample.labelNames, sample.labelValues, size);
+          break;
+        }
+      }
+      if (key == null) {
+        key = encodeKey(sample, size, keys);
+        keys.last(sample.labelNames, sample.labelValues, size, key);
+      }
+    }
+    return key;
+  }
+
+  private static byte[] encodeKey(MetricFamilySamples.Sample sample, int size, SeriesKeys keys) {
+    ByteBuf scratch = keys.scratch();
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        scratch.writeByte(',');
+      }
+      writeLabel(scratch, sample.labelNames.get(i), sample.labelValues.get(i));
+    }
+    return keys.fromScratch();
+  }
+
+  private static void writeLabel(ByteBuf buf, String name, String value) {
+    writeAscii(buf, name);
+    buf.writeByte('=').writeByte('"');
+    writeEscaped(buf, value, true);
+    buf.writeByte('"');
+  }
+
+  /**
+   * @return whether the samples with {@code labelNames} are histogram buckets or summary quantiles, having the labels
+   * of their child and an {@code le} or {@code quantile} label
+   */
+  static boolean isBucket(MetricFamilySamples family, List<String> labelNames) {
+    int size = labelNames.size();
+    switch (family.type) {
+      case HISTOGRAM:
+        return size > 0 && labelNames.get(size - 1).equals("le");
+      case SUMMARY:
+        return size > 0 && labelNames.get(size - 1).equals("quantile");
+      default:
+        return false;
+    }
+  }
+
+  String familyName(MetricFamilySamples family) {
+    return family.name;
+  }
+
+  void writeSampleName(ByteBuf buf, MetricFamilySamples family, MetricFamilySamples.Sample sample) {
+    writeAscii(buf, sample.name);
+  }
+
+  boolean escapeHelpQuotes() {
+    return false;
+  }
+
+  String typeName(Collector.Type type) {
+    switch (type) {
+      case COUNTER:
+        return "counter";
+      case GAUGE:
+        return "gauge";
+      case SUMMARY:
+        return "summary";
+      case HISTOGRAM:
+        return "histogram";
+      default:
+        return "untyped";
+    }
+  }
+
+  /**
+   * Write {@code value} as Go formats it, {@code +Inf}, {@code -Inf} and {@code NaN} included.
+   */
+  static void writeDouble(ByteBuf buf, double value) {
+    if (value != value) {
+      buf.writeBytes(NAN);
+      return;
+    }
+    if (value == Double.POSITIVE_INFINITY) {
+      buf.writeBytes(POSITIVE_INFINITY);
+      return;
+    }
+    if (value == Double.NEGATIVE_INFINITY) {
+      buf.writeBytes(NEGATIVE_INFINITY);
+      return;
+    }
+    double abs = Math.abs(value);
+    if (abs < MAX_EXACT && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+      for (int digits = 0; digits <= MAX_FRACTION_DIGITS; digits++) {
+        double scaled = abs * POWERS_OF_TEN[digits];
+        if (scaled >= MAX_EXACT) {
+          break;
+        }
+        long units = Math.round(scaled);
+        // Both operands are exact, so the division rounds once: it is the double the decimal form parses to
+        if (units / POWERS_OF_TEN[digits] == abs) {
+          if (value < 0) {
+            buf.writeByte('-');
+          }
+          writeDecimal(buf, units, digits);
+          return;
+        }
+      }
+    }
+    writeAscii(buf, Double.toString(value));
+  }
+
+  /**
+   * Write {@code units / 10^digits} with at least one digit after the point.
+   */
+  private static void writeDecimal(ByteBuf buf, long units, int digits) {
+    int length = Math.max(stringSize(units), digits + 1);
+    int start = buf.writerIndex();
+    int end = start + length + 1 + (digits == 0 ? 1 : 0);
+    buf.ensureWritable(end - start);
+    int pos = end;
+    if (digits == 0) {
+      buf.setByte(--pos, '0');
+    }
+    for (int i = 0; i < length; i++) {
+      if (i == digits) {
+        buf.setByte(--pos, '.');
+      }
+      buf.setByte(--pos, (int) ('0' + units % 10));
+      units /= 10;
+    }
+    buf.writerIndex(end);
+  }
+
+  private static int stringSize(long value) {
+    int size = 1;
+    for (long p = 10; p <= value && size < 19; p *= 10) {
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Metric names, label names and formatted numbers are restricted to ASCII by the Prometheus data model.
+   */
+  static void writeAscii(ByteBuf buf, String s) {
+    ByteBufUtil.writeAscii(buf, s);
+  }
+
+  /**
+   * Write {@code s} as UTF-8, escaping backslashes, line feeds and (for label values) double quotes.
+   */
+  static void writeEscaped(ByteBuf buf, String s, boolean quote) {
+    int len = s.length();
+    int plain = 0;
+    while (plain < len) {
+      char c = s.charAt(plain);
+      if (c >= 0x80 || c == '\\' || c == '\n' || c == '"' && quote) {
+        break;
+      }
+      plain++;
+    }
+    if (plain == len) {
+      // Most values have nothing to escape
+      ByteBufUtil.writeAscii(buf, s);
+      return;
+    }
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c == '\\') {
+        buf.writeByte('\\').writeByte('\\');
+      } else if (c == '\n') {
+        buf.writeByte('\\').writeByte('n');
+      } else if (c == '"' && quote) {
+        buf.writeByte('\\').writeByte('"');
+      } else if (c < 0x80) {
+        buf.writeByte(c);
+      } else if (c < 0x800) {
+        buf.writeByte(0xC0 | (c >> 6));
+        buf.writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buf.writeByte(0xF0 | (cp >> 18));
+        buf.writeByte(0x80 | ((cp >> 12) & 0x3F));
+        buf.writeByte(0x80 | ((cp >> 6) & 0x3F));
+        buf.writeByte(0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buf.writeByte('?');
+      } else {
+        buf.writeByte(0xE0 | (c >> 12));
+        buf.writeByte(0x80 | ((c >> 6) & 0x3F));
+        buf.writeByte(0x80 | (c & 0x3F));
+      }
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.dropwizard.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Periodically reads the CPU time of the Vert.x threads from the {@link ThreadMXBean}, and reports per thread the
+ * cumulated CPU seconds and the ratio of the last interval the thread was busy.
+ * <p>
+ * The threads are recognized by the name prefix of their pool: the event loops, and the worker pools declared by
+ * {@link #addPool(String)} as Vert.x creates them. The series of a thread are removed once it is gone.
+ * <p>
+ * Reading the thread information is blocking and its duration grows with the number of threads, so the sampling runs
+ * on a worker thread rather than on the event loop firing the timer.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class ThreadUtilizationSampler {
+
+  private static final Logger log = LoggerFactory.getLogger(ThreadUtilizationSampler.class);
+
+  static final String EVENT_LOOP_POOL = "vert.x-eventloop-thread";
+  private static final double NANOS_PER_SECOND = 1E9;
+
+  private final Vertx vertx;
+  private final long interval;
+  private final Family<Counter.Child> cpuSeconds;
+  private final Family<Gauge.Child> utilization;
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+  private final List<String> pools = new CopyOnWriteArrayList<>();
+  // Only accessed by the sampling, which is synchronized
+  private final Map<Long, SampledThread> threads = new HashMap<>();
+  private long timerId = -1;
+
+  ThreadUtilizationSampler(Vertx vertx, long interval, Family<Counter.Child> cpuSeconds, Family<Gauge.Child> utilization) {
+    this.vertx = vertx;
+    this.interval = interval;
+    this.cpuSeconds = cpuSeconds;
+    this.utilization = utilization;
+    pools.add(EVENT_LOOP_POOL);
+  }
+
+  /**
+   * Sample the threads whose name is {@code pool} followed by a dash and a number.
+   */
+  void addPool(String pool) {
+    if (!pools.contains(pool)) {
+      pools.add(pool);
+    }
+  }
+
+  synchronized void start() {
+    if (timerId != -1) {
+      return;
+    }
+    if (!threadMXBean.isThreadCpuTimeSupported()) {
+      log.warn("Thread CPU time is not supported by this JVM, the thread utilization is not reported");
+      return;
+    }
+    if (!threadMXBean.isThreadCpuTimeEnabled()) {
+      threadMXBean.setThreadCpuTimeEnabled(true);
+    }
+    sampleBlocking();
+    timerId = vertx.setPeriodic(interval, id -> sampleBlocking());
+  }
+
+  private void sampleBlocking() {
+    vertx.executeBlocking(future -> {
+      sample(System.nanoTime());
+      future.complete();
+    }, false, null);
+  }
+
+  /**
+   * Read the CPU time of the sampled threads: the first sample of a thread only records its CPU time.
+   */
+  synchronized void sample(long now) {
+    for (SampledThread thread : threads.values()) {
+      thread.alive = false;
+    }
+    for (ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+      if (info == null) {
+        continue;
+      }
+      String pool = pool(info.getThreadName());
+      if (pool == null) {
+        continue;
+      }
+      long cpuTime = threadMXBean.getThreadCpuTime(info.getThreadId());
+      if (cpuTime == -1) {
+        // Terminated meanwhile
+        continue;
+      }
+      SampledThread thread = threads.get(info.getThreadId());
+      if (thread == null || !thread.name.equals(info.getThreadName())) {
+        if (thread != null) {
+          // The id of a terminated thread, reused
+          remove(thread);
+        }
+        threads.put(info.getThreadId(), new SampledThread(pool, info.getThreadName(), cpuTime, now));
+        continue;
+      }
+      thread.alive = true;
+      cpuSeconds.labels(thread.pool, thread.name).inc((cpuTime - thread.cpuTime) / NANOS_PER_SECOND);
+      if (now > thread.time) {
+        utilization.labels(thread.pool, thread.name).set((cpuTime - thread.cpuTime) / (double) (now - thread.time));
+      }
+      thread.cpuTime = cpuTime;
+      thread.time = now;
+    }
+    for (Iterator<SampledThread> it = threads.values().iterator(); it.hasNext(); ) {
+      SampledThread thread = it.next();
+      if (!thread.alive) {
+        it.remove();
+        remove(thread);
+      }
+    }
+  }
+
+  private void remove(SampledThread thread) {
+    cpuSeconds.remove(thread.pool, thread.name);
+    utilization.remove(thread.pool, thread.name);
+  }
+
+  private String pool(String threadName) {
+    for (String pool : pools) {
+      if (threadName.length() > pool.length() + 1 && threadName.startsWith(pool) && threadName.charAt(pool.length()) == '-') {
+        return pool;
+      }
+    }
+    return null;
+  }
+
+  synchronized void close() {
+    if (timerId != -1) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+  }
+
+  private static class SampledThread {
+
+    final String pool;
+    final String name;
+    long cpuTime;
+    long time;
+    boolean alive = true;
+
+    SampledThread(String pool, String name, long cpuTime, long time) {
+      this.pool = pool;
+      this.name = name;
+      this.cpuTime = cpuTime;
+      this.time = time;
+    }
+  }
+}
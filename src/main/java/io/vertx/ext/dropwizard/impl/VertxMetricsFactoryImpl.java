@@ -16,11 +16,11 @@
 
 package io.vertx.ext.dropwizard.impl;
 
-import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SharedMetricRegistries;
+import io.prometheus.client.CollectorRegistry;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.core.impl.FileResolver;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -33,7 +33,11 @@ import io.vertx.ext.dropwizard.reporters.JmxReporter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -41,6 +45,18 @@ import java.util.Scanner;
 public class VertxMetricsFactoryImpl implements VertxMetricsFactory {
 
   static final String BASE_NAME = "vertx";
+  static final ConcurrentMap<String, CollectorRegistry> SHARED_REGISTRIES = new ConcurrentHashMap<>();
+  private static final Map<CollectorRegistry, CollectorCache> COLLECTOR_CACHES = new WeakHashMap<>();
+
+  /**
+   * @return the collectors of {@code registry}, shared by all the metrics objects reporting to it
+   */
+  static CollectorCache collectorCache(CollectorRegistry registry) {
+    synchronized (COLLECTOR_CACHES) {
+      return COLLECTOR_CACHES.computeIfAbsent(registry, r -> new CollectorCache());
+    }
+  }
+
   private Logger logger = LoggerFactory.getLogger(VertxMetricsFactoryImpl.class);
 
   @Override
@@ -52,10 +68,10 @@ public class VertxMetricsFactoryImpl implements VertxMetricsFactory {
     } else {
       metricsOptions = new DropwizardMetricsOptions(baseOptions.toJson());
     }
-    MetricRegistry registry = new MetricRegistry();
+    CollectorRegistry registry = new CollectorRegistry();
     boolean shutdown = true;
     if (metricsOptions.getRegistryName() != null) {
-      MetricRegistry other = SharedMetricRegistries.add(metricsOptions.getRegistryName(), registry);
+      CollectorRegistry other = SHARED_REGISTRIES.putIfAbsent(metricsOptions.getRegistryName(), registry);
       if (other != null) {
         registry = other;
         shutdown = false;
@@ -80,6 +96,22 @@ public class VertxMetricsFactoryImpl implements VertxMetricsFactory {
       metrics.setDoneHandler(v -> reporter.stop());
       reporter.start();
     }
+    if (metricsOptions.isExporterEnabled()) {
+      // Started once Vert.x is fully initialized, see VertxMetricsImpl#eventBusInitialized
+      metrics.setExporter(new PrometheusExporter(vertx, metrics.registry(), metricsOptions));
+    }
+    if (metricsOptions.getSeriesTtl() > 0) {
+      // Started once Vert.x is fully initialized, like the exporter
+      metrics.setSweeper(new SeriesSweeper(vertx, metricsOptions.getSeriesTtl()));
+    }
+    if (metricsOptions.getEventLoopLagProbeInterval() > 0) {
+      // Started once Vert.x is fully initialized, like the exporter
+      metrics.setEventLoopLagProbe((VertxInternal) vertx, metricsOptions.getEventLoopLagProbeInterval());
+    }
+    if (metricsOptions.getThreadUtilizationInterval() > 0) {
+      // Before the worker pools are created, so that they register their threads
+      metrics.setThreadUtilizationSampler(vertx, metricsOptions.getThreadUtilizationInterval());
+    }
 
     return metrics;
   }
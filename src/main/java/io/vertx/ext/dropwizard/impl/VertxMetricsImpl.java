@@ -17,6 +17,7 @@
 package io.vertx.ext.dropwizard.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -25,6 +26,7 @@ import java.util.Map;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.Verticle;
 import io.vertx.core.VertxOptions;
 import io.vertx.core.datagram.DatagramSocket;
@@ -34,6 +36,7 @@ import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.net.NetClientOptions;
 import io.vertx.core.net.NetServerOptions;
 import io.vertx.core.net.SocketAddress;
@@ -51,30 +54,32 @@ import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
  */
 class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
 
-  private final DropwizardMetricsOptions options;
-  private final Gauge timers;
-  private final Gauge verticles;
+  private final Family<Gauge.Child> timers;
+  private final Family<Gauge.Child> verticles;
   private Handler<Void> doneHandler;
+  private PrometheusExporter exporter;
+  private SeriesSweeper sweeper;
+  private EventLoopLagProbe eventLoopLagProbe;
+  private ThreadUtilizationSampler threadUtilizationSampler;
   private final boolean shutdown;
   private final Map<String, HttpClientReporter> clientReporters = new HashMap<>();
 
   VertxMetricsImpl(CollectorRegistry registry, boolean shutdown, VertxOptions options, DropwizardMetricsOptions metricsOptions, String baseName) {
-    super(registry, baseName, new LinkedHashMap<>());
+    super(registry, baseName, new LinkedHashMap<>(), metricsOptions);
 
-    this.options = metricsOptions;
     this.shutdown = shutdown;
     this.timers = gauge("timers");
     this.verticles = gauge("verticles", "name");
 
     // FIXME: is it really something that changes over time?
-    Gauge eventLoopSize = gauge("event_loop_size");
-    eventLoopSize.setChild(new Gauge.Child() {
+    Family<Gauge.Child> eventLoopSize = gauge("event_loop_size");
+    eventLoopSize.collector().setChild(new Gauge.Child() {
       @Override public double get() {
         return options.getEventLoopPoolSize();
       }
     });
-    Gauge workerPoolSize = gauge("worker_pool_size");
-    workerPoolSize.setChild(new Gauge.Child() {
+    Family<Gauge.Child> workerPoolSize = gauge("worker_pool_size");
+    workerPoolSize.collector().setChild(new Gauge.Child() {
       @Override public double get() {
         return options.getWorkerPoolSize();
       }
@@ -108,24 +113,40 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
 
   @Override
   public void timerCreated(long id) {
-    timers.inc();
+    labels(timers).inc();
   }
 
   @Override
   public void timerEnded(long id, boolean cancelled) {
-    timers.dec();
+    labels(timers).dec();
+  }
+
+  @Override
+  public void eventBusInitialized(EventBus bus) {
+    if (exporter != null) {
+      exporter.start();
+    }
+    if (sweeper != null) {
+      sweeper.start();
+    }
+    if (eventLoopLagProbe != null) {
+      eventLoopLagProbe.start();
+    }
+    if (threadUtilizationSampler != null) {
+      threadUtilizationSampler.start();
+    }
   }
 
   @Override
   public EventBusMetrics createMetrics(EventBus eventBus) {
-    return new PrometheusEventBusMetrics(registry(), "eventbus");
+    return swept(new PrometheusEventBusMetrics(registry(), "eventbus", options));
   }
 
   @Override
   public HttpServerMetrics<?, ?, ?> createMetrics(HttpServer server, SocketAddress localAddress, HttpServerOptions options) {
     LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
     globalLabels.put("local", PrometheusTCPMetrics.addressName(localAddress));
-    return new HttpServerMetricsImpl(registry(), "http_servers", globalLabels);
+    return swept(new HttpServerMetricsImpl(registry(), "http_servers", globalLabels, this.options));
   }
 
   @Override
@@ -140,7 +161,7 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
       key = "http_clients";
     }
     HttpClientReporter reporter = clientReporters.computeIfAbsent(key,
-      id -> new HttpClientReporter(registry(), "http_clients", id, globalLabels));
+      id -> swept(new HttpClientReporter(registry(), "http_clients", id, globalLabels, this.options)));
     return new PrometheusHttpClientMetrics(reporter, options, globalLabels, this::closed);
   }
 
@@ -155,7 +176,8 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
   public TCPMetrics<?> createMetrics(SocketAddress localAddress, NetServerOptions options) {
     LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
     globalLabels.put("local", PrometheusTCPMetrics.addressName(localAddress));
-    return new PrometheusTCPMetrics(registry(), "net_servers", globalLabels);
+    return swept(new PrometheusTCPMetrics(registry(), "net_servers", globalLabels, this.options, Collections.emptyList(),
+      RemoteLabeler.server(this.options)));
   }
 
   @Override
@@ -165,12 +187,13 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
     if (name != null && name.length() > 0) {
       globalLabels.put("client", name);
     }
-    return new PrometheusTCPMetrics(registry(), "net_clients", globalLabels);
+    return swept(new PrometheusTCPMetrics(registry(), "net_clients", globalLabels, this.options, Collections.emptyList(),
+      RemoteLabeler.CLIENT));
   }
 
   @Override
   public DatagramSocketMetrics createMetrics(DatagramSocket socket, DatagramSocketOptions options) {
-    return new DatagramSocketMetricsImpl(registry(), "datagram", new LinkedHashMap<>());
+    return swept(new DatagramSocketMetricsImpl(registry(), "datagram", new LinkedHashMap<>(), this.options));
   }
 
   @Override
@@ -178,15 +201,32 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
     LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
     globalLabels.put("pool_type", poolType);
     globalLabels.put("pool_name", poolName);
-    return new PoolMetricsImpl(registry(), "pools", globalLabels, maxPoolSize);
+    if (threadUtilizationSampler != null && "worker".equals(poolType)) {
+      // Worker threads are named after their pool
+      threadUtilizationSampler.addPool(poolName);
+    }
+    return swept(new PoolMetricsImpl(registry(), "pools", globalLabels, this.options, maxPoolSize));
   }
 
   @Override
   public void close() {
+    if (exporter != null) {
+      exporter.close();
+    }
+    if (sweeper != null) {
+      sweeper.close();
+    }
+    if (eventLoopLagProbe != null) {
+      eventLoopLagProbe.close();
+    }
+    if (threadUtilizationSampler != null) {
+      threadUtilizationSampler.close();
+    }
     if (shutdown) {
-      RegistryHelper.shutdown(registry);
+      registry().clear();
+      VertxMetricsFactoryImpl.collectorCache(registry()).clear();
       if (options.getRegistryName() != null) {
-        SharedMetricRegistries.remove(options.getRegistryName());
+        VertxMetricsFactoryImpl.SHARED_REGISTRIES.remove(options.getRegistryName());
       }
     }
     List<HttpClientReporter> reporters;
@@ -210,6 +250,32 @@ class VertxMetricsImpl extends AbstractMetrics implements VertxMetrics {
     this.doneHandler = handler;
   }
 
+  void setExporter(PrometheusExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  void setEventLoopLagProbe(VertxInternal vertx, long interval) {
+    eventLoopLagProbe = new EventLoopLagProbe(vertx, interval, clock, histogram("event_loop_lag", "event_loop"));
+  }
+
+  void setThreadUtilizationSampler(Vertx vertx, long interval) {
+    threadUtilizationSampler = new ThreadUtilizationSampler(vertx, interval,
+      counter("thread_cpu_seconds_total", "pool", "thread"),
+      gauge("thread_utilization", "pool", "thread"));
+  }
+
+  void setSweeper(SeriesSweeper sweeper) {
+    this.sweeper = sweeper;
+    sweptBy(sweeper);
+  }
+
+  private <M extends AbstractMetrics> M swept(M metrics) {
+    if (sweeper != null) {
+      metrics.sweptBy(sweeper);
+    }
+    return metrics;
+  }
+
   private static String verticleName(Verticle verticle) {
     return verticle.getClass().getName();
   }
@@ -50,6 +50,34 @@
  *
  * To see details about JMX see the <<jmx>> section at the bottom.
  *
+ * == Prometheus exporter
+ *
+ * Metrics can be scraped by Prometheus from an embedded HTTP server started alongside Vert.x:
+ *
+ * [source,$lang]
+ * ----
+ * {@link examples.MetricsExamples#setupExporter()}
+ * ----
+ *
+ * The server answers `GET` requests on {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setExporterPath(java.lang.String) the exporter path}
+ * with the Prometheus text format, or with the OpenMetrics text format or the Prometheus delimited protocol buffer
+ * format when the `Accept` header of the request prefers them. Samples are encoded and written in small chunks, so scraping a large registry does
+ * not block the event loop serving the request.
+ *
+ * Concurrent scrapes share a single collection of the registry: a request arriving while the registry is encoded gets
+ * the chunks of the running scrape. Setting {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setExporterCacheMaxAge(long) a cache max age}
+ * also serves the last scrape to the requests arriving within this delay after it completed, so that several
+ * Prometheus servers scraping the same instance do not multiply the collection cost.
+ *
+ * Responses are compressed with `gzip` or `deflate` when the request accepts it with an `Accept-Encoding` header, as
+ * Prometheus does. The text is compressed chunk by chunk as it is encoded, and the compressed chunks are written as
+ * soon as they are produced.
+ *
+ * A scrape can be restricted to some metrics with the repeatable `name[]` and `prefix[]` query parameters, for
+ * instance `/metrics?name[]=vertx_http_servers_requests&prefix[]=vertx_eventbus_`. Only the selected metrics are
+ * collected, so such a scrape costs in proportion to what it returns. Prefixes only select the Vert.x metrics; names
+ * also select the other collectors of a shared registry.
+ *
  * == Command line activation
  *
  * When running Vert.x from the command line interface, metrics can be activated via JVM system properties. System
@@ -316,6 +344,16 @@
  * * `vertx.verticles` - A <<counter>> of the number of verticles currently deployed
  * * `vertx.verticles.<verticle-name>` - A <<counter>> of the number of deployment of a particular verticle
  *
+ * When {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setEventLoopLagProbeInterval} is set, a task is
+ * scheduled on each event loop at this interval and `vertx_event_loop_lag`, a histogram labelled by `event_loop`,
+ * reports in seconds how late it runs. An event loop blocked by a long task, or overloaded, runs it late; an idle one
+ * runs it within about a millisecond.
+ *
+ * When {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setThreadUtilizationInterval} is set, the CPU time of
+ * the event loop and worker threads is read at this interval: `vertx_thread_cpu_seconds_total` is the CPU time used
+ * by a thread and `vertx_thread_utilization` the ratio of the last interval it was busy, both labelled by `pool` and
+ * `thread`. Worker threads are recognized by the name of their pool, named worker executors included.
+ *
  * === Event bus metrics
  *
  * Base name: `vertx.eventbus`
@@ -355,6 +393,25 @@
  *
  * WARNING: if you use regex match, a wrong regex can potentially match a lot of handlers.
  *
+ * The `address` label of event bus metrics is the address when no handler is monitored. Otherwise it is the alias or
+ * value of the first matching handler, and `other` for the addresses no handler matches. The temporary addresses
+ * of the reply handlers registered on this Vert.x instance are all reported as `__reply__`. The replies sent to the
+ * reply handlers of another cluster node keep their address, unless
+ * {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setCollapseReplyShapedAddresses(boolean) addresses shaped
+ * like reply addresses are collapsed}: a sequence number or a UUID, ordinary addresses included.
+ *
+ * The `queue_time` histogram, labelled by `address` and `origin` (`local` or `remote`), reports the seconds a message
+ * waits between being scheduled for a handler and the handler starting to process it, i.e. the time spent in the
+ * handler context queue, paused handlers included. When more than 256 messages wait for the same handler, the queue
+ * time of the oldest ones is measured from the oldest time still kept. Vert.x does not tell the metrics which message
+ * a handler starts to process, so messages are matched in the order they were scheduled. A message discarded by a
+ * paused handler whose buffer is full is never processed, and the later messages of this handler are then measured
+ * from the time of an earlier message: their queue time is over-reported.
+ *
+ * The `round_trip` histogram, labelled by the `address` a message is sent to, reports the seconds between sending a
+ * message with a reply handler and the reply handler starting to process the reply. Replies that never come are
+ * counted by `reply_failures` instead.
+ *
  * [[http-server-metrics]]
  * === Http server metrics
  *
@@ -444,6 +501,19 @@
  * * `bytes-read` - A <<histogram>> of the number of bytes read.
  * * `bytes-written` - A <<histogram>> of the number of bytes written.
  *
+ * On busy connections, observing every read and write can be costly. When
+ * {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setAggregateBytesPerConnection(boolean) bytes are aggregated per connection},
+ * `bytes-read` and `bytes-written` observe the total bytes of a connection once it is closed, and the `bytes_read_total`
+ * and `bytes_written_total` counters are increased at the same time.
+ *
+ * The `remote` label of inbound connections defaults to the `host:port` of the client, whose port is ephemeral. The
+ * {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setRemoteLabelStrategy(io.vertx.ext.dropwizard.RemoteLabelStrategy) remote label strategy}
+ * can keep the host only, bucket hosts per network, keep the most frequent hosts and label the others `other`, or drop
+ * the value. The `connections` series of a remote is removed when its last connection is closed. The `bytes` and
+ * `exceptions` series are kept, so that the traffic of a connection closed between two scrapes is still exported, until
+ * they expire after the {@link io.vertx.ext.dropwizard.DropwizardMetricsOptions#setSeriesTtl(long) series TTL}. With the
+ * default strategy, enabling the TTL is therefore recommended.
+ *
  * === Net client metrics
  *
  * Base name: `vertx.net.clients` (by default) or `vertx.net.clients.<id>` where `<id>` is a non empty string
@@ -461,6 +531,10 @@
  * * `<host>:<port>.bytes-read` - A <<histogram>> of the number of bytes read.
  * ** This metric will only be available if the datagram socket is listening
  *
+ * With Prometheus, `datagram_bytes_read`, `datagram_bytes_written` and `datagram_exceptions` are labelled by the
+ * `local` address the socket listens on, `?` for the sockets that only send. The `_count` of a bytes histogram is the
+ * number of packets. The series of an address are removed when its last socket is closed.
+ *
  * === Pool metrics
  *
  * Base name: `vertx.pools.<type>.<name>` where `type` is the type of the pool (e.g _worker_, _datasource_) and
@@ -481,6 +555,10 @@
  * The `pool-ratio` and the `max_pool_size` won't be present when the measured pool's max pool size could not
  * be determined.
  *
+ * With Prometheus, these are exposed as `pools_queue_delay` and `pools_usage` histograms in seconds, and
+ * `pools_queue_size`, `pools_in_use`, `pools_pool_ratio` and `pools_max_pool_size` gauges, labelled by `pool_type`
+ * and `pool_name`. The `pool_ratio` is computed from `in_use` when scraped.
+ *
  * [[jmx]]
  * == JMX
  *
@@ -2,53 +2,109 @@ package io.vertx.kotlin.ext.dropwizard
 
 import io.vertx.ext.dropwizard.DropwizardMetricsOptions
 import io.vertx.ext.dropwizard.Match
+import io.vertx.ext.dropwizard.RemoteLabelStrategy
 
 /**
  * A function providing a DSL for building [io.vertx.ext.dropwizard.DropwizardMetricsOptions] objects.
  *
  * Vert.x Dropwizard metrics configuration.
  *
+ * @param aggregateBytesPerConnection  Set whether the bytes read and written by TCP connections are aggregated per connection. When enabled, the bytes histograms observe the total bytes of each connection once it is closed rather than every read and write, and <code>bytes_read_total</code> and <code>bytes_written_total</code> counters are updated when connections are closed.
  * @param baseName  Set a custom baseName for metrics.
+ * @param collapseReplyShapedAddresses  Set whether the event bus addresses shaped like the reply addresses Vert.x generates, a number or a UUID, are reported as <code>__reply__</code>. The addresses of the reply handlers registered on this Vert.x instance are always reported as <code>__reply__</code>, this also covers the replies sent to the reply handlers of other cluster nodes. Ordinary addresses having the same shape are reported as <code>__reply__</code> too.
  * @param configPath  Set the path for a config file that contains options in JSON format, to be used to create a new options object. The file will be looked for on the file system first and then on the classpath if it's not found.
  * @param enabled 
+ * @param eventLoopLagProbeInterval  Set the interval of the event loop lag probe, in milliseconds. When positive, a task is scheduled on each event loop at this interval and the delay between its scheduled and actual execution is reported per event loop. A value of <code>0</code> or less disables the probe.
+ * @param exporterCacheMaxAge  Set the max age of the scrape cached by the exporter, in milliseconds. Scrapes arriving within this delay after a collection are answered with its encoded payload. Concurrent scrapes always share the collection in progress. A value of <code>0</code> or less disables the cache.
+ * @param exporterEnabled  Set whether an embedded HTTP server exposing the metrics in the Prometheus text format will be started.
+ * @param exporterHost  Set the host the embedded Prometheus exporter binds to.
+ * @param exporterPath  Set the path of the embedded Prometheus exporter scrape endpoint.
+ * @param exporterPort  Set the port the embedded Prometheus exporter listens on.
  * @param jmxDomain  Set the JMX domain to use when JMX metrics are enabled.
  * @param jmxEnabled  Set whether JMX will be enabled on the Vert.x instance.
+ * @param maxSeriesPerMetric  Set the maximum number of series (i.e. distinct label values combinations) a metric can have. Once reached, new series of this metric are aggregated in a single series whose label values are <code>overflow</code>. A value lower or equal to zero removes the limit.
  * @param monitoredEventBusHandlers  Add a monitored event bus handler.
  * @param monitoredHttpClientEndpoints  Add an monitored http client endpoint.
  * @param monitoredHttpClientUris  Add an monitored http client uri.
  * @param monitoredHttpServerUris  Add an monitored http server uri.
  * @param registryName  Set the name used for registering the metrics in the Dropwizard shared registry.
+ * @param remoteLabelCidrPrefix  Set the prefix length of the IPv4 networks used by the <code>CIDR</code> remote label strategy. IPv6 addresses are reported by /64 networks.
+ * @param remoteLabelStrategy  Set how the <code>remote</code> label of server connections metrics is computed. Whatever the strategy, the <code>connections</code> gauge child of a remote is removed once its last connection is closed, while its bytes and exceptions children are kept until they expire after the series TTL.
+ * @param remoteLabelTopK  Set the number of hosts reported by the <code>TOP_K</code> remote label strategy: the hosts opening the most connections are reported, the others are reported as <code>other</code>. The reported hosts are recomputed every 10 seconds, among the hosts having opened at least 10 connections, so that clients opening a few connections each are always reported as <code>other</code>.
+ * @param seriesTtl  Set the time to live of idle series, in milliseconds. A labelled series whose value has not changed for longer than this is removed, gauges only when their value is zero. A value of <code>0</code> or less keeps series forever.
+ * @param threadUtilizationInterval  Set the interval of the thread utilization sampling, in milliseconds. When positive, the CPU time of the event loop and worker threads is read at this interval and reported per thread, along with the ratio of the interval the thread was busy. A value of <code>0</code> or less disables the sampling.
  *
  * <p/>
  * NOTE: This function has been automatically generated from the [io.vertx.ext.dropwizard.DropwizardMetricsOptions original] using Vert.x codegen.
  */
 fun DropwizardMetricsOptions(
+  aggregateBytesPerConnection: Boolean? = null,
   baseName: String? = null,
+  collapseReplyShapedAddresses: Boolean? = null,
   configPath: String? = null,
   enabled: Boolean? = null,
+  eventLoopLagProbeInterval: Long? = null,
+  exporterCacheMaxAge: Long? = null,
+  exporterEnabled: Boolean? = null,
+  exporterHost: String? = null,
+  exporterPath: String? = null,
+  exporterPort: Int? = null,
   jmxDomain: String? = null,
   jmxEnabled: Boolean? = null,
+  maxSeriesPerMetric: Int? = null,
   monitoredEventBusHandlers: Iterable<io.vertx.ext.dropwizard.Match>? = null,
   monitoredHttpClientEndpoints: Iterable<io.vertx.ext.dropwizard.Match>? = null,
   monitoredHttpClientUris: Iterable<io.vertx.ext.dropwizard.Match>? = null,
   monitoredHttpServerUris: Iterable<io.vertx.ext.dropwizard.Match>? = null,
-  registryName: String? = null): DropwizardMetricsOptions = io.vertx.ext.dropwizard.DropwizardMetricsOptions().apply {
+  registryName: String? = null,
+  remoteLabelCidrPrefix: Int? = null,
+  remoteLabelStrategy: RemoteLabelStrategy? = null,
+  remoteLabelTopK: Int? = null,
+  seriesTtl: Long? = null,
+  threadUtilizationInterval: Long? = null): DropwizardMetricsOptions = io.vertx.ext.dropwizard.DropwizardMetricsOptions().apply {
 
+  if (aggregateBytesPerConnection != null) {
+    this.setAggregateBytesPerConnection(aggregateBytesPerConnection)
+  }
   if (baseName != null) {
     this.setBaseName(baseName)
   }
+  if (collapseReplyShapedAddresses != null) {
+    this.setCollapseReplyShapedAddresses(collapseReplyShapedAddresses)
+  }
   if (configPath != null) {
     this.setConfigPath(configPath)
   }
   if (enabled != null) {
     this.setEnabled(enabled)
   }
+  if (eventLoopLagProbeInterval != null) {
+    this.setEventLoopLagProbeInterval(eventLoopLagProbeInterval)
+  }
+  if (exporterCacheMaxAge != null) {
+    this.setExporterCacheMaxAge(exporterCacheMaxAge)
+  }
+  if (exporterEnabled != null) {
+    this.setExporterEnabled(exporterEnabled)
+  }
+  if (exporterHost != null) {
+    this.setExporterHost(exporterHost)
+  }
+  if (exporterPath != null) {
+    this.setExporterPath(exporterPath)
+  }
+  if (exporterPort != null) {
+    this.setExporterPort(exporterPort)
+  }
   if (jmxDomain != null) {
     this.setJmxDomain(jmxDomain)
   }
   if (jmxEnabled != null) {
     this.setJmxEnabled(jmxEnabled)
   }
+  if (maxSeriesPerMetric != null) {
+    this.setMaxSeriesPerMetric(maxSeriesPerMetric)
+  }
   if (monitoredEventBusHandlers != null) {
     for (item in monitoredEventBusHandlers) {
       this.addMonitoredEventBusHandler(item)
@@ -72,5 +128,20 @@ fun DropwizardMetricsOptions(
   if (registryName != null) {
     this.setRegistryName(registryName)
   }
+  if (remoteLabelCidrPrefix != null) {
+    this.setRemoteLabelCidrPrefix(remoteLabelCidrPrefix)
+  }
+  if (remoteLabelStrategy != null) {
+    this.setRemoteLabelStrategy(remoteLabelStrategy)
+  }
+  if (remoteLabelTopK != null) {
+    this.setRemoteLabelTopK(remoteLabelTopK)
+  }
+  if (seriesTtl != null) {
+    this.setSeriesTtl(seriesTtl)
+  }
+  if (threadUtilizationInterval != null) {
+    this.setThreadUtilizationInterval(threadUtilizationInterval)
+  }
 }
 
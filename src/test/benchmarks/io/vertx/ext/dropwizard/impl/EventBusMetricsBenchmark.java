@@ -0,0 +1,87 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link PrometheusEventBusMetrics} callbacks of a message, on the sending side and on the handling side.
+ * <p>
+ * Each thread registers its own handler on the same address, like the instances of a verticle deployed on several
+ * event loops. Other thread counts can be measured with {@code -t}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EventBusMetricsBenchmark {
+
+  private static final String ADDRESS = "the-address";
+
+  private PrometheusEventBusMetrics metrics;
+
+  @Setup
+  public void setup() {
+    metrics = new PrometheusEventBusMetrics(new CollectorRegistry(), "eventbus", new DropwizardMetricsOptions());
+  }
+
+  @State(Scope.Thread)
+  public static class Handler {
+
+    PrometheusEventBusMetrics.HandlerMetric handlerMetric;
+
+    @Setup
+    public void setup(EventBusMetricsBenchmark benchmark) {
+      handlerMetric = benchmark.metrics.handlerRegistered(ADDRESS, null);
+    }
+  }
+
+  private void handle(PrometheusEventBusMetrics.HandlerMetric handlerMetric) {
+    metrics.scheduleMessage(handlerMetric, true);
+    metrics.beginHandleMessage(handlerMetric, true);
+    metrics.endHandleMessage(handlerMetric, null);
+  }
+
+  private void send() {
+    metrics.messageSent(ADDRESS, false, true, false);
+    metrics.messageReceived(ADDRESS, false, true, 1);
+  }
+
+  @Benchmark
+  public void handleMessage(Handler handler) {
+    handle(handler.handlerMetric);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void handleMessageContended(Handler handler) {
+    handle(handler.handlerMetric);
+  }
+
+  @Benchmark
+  public void sendMessage() {
+    send();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void sendMessageContended() {
+    send();
+  }
+}
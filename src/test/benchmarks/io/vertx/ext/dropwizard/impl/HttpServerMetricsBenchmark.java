@@ -0,0 +1,89 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.Match;
+import io.vertx.ext.dropwizard.MatchType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link HttpServerMetricsImpl} callbacks of a request, from {@code requestBegin} to
+ * {@code responseEnd}, with or without monitored uris. All the threads serve the same uri, like the event loops of
+ * a server. Other thread counts can be measured with {@code -t}.
+ * <p>
+ * The request and response are proxies, whose dispatch is part of the measure.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HttpServerMetricsBenchmark {
+
+  @Param({"false", "true"})
+  public boolean monitoredUris;
+
+  private HttpServerMetricsImpl metrics;
+  private HttpServerRequest request;
+  private HttpServerResponse response;
+
+  @Setup
+  public void setup() {
+    DropwizardMetricsOptions options = new DropwizardMetricsOptions();
+    if (monitoredUris) {
+      options.addMonitoredHttpServerUri(new Match().setValue("/api/items/[0-9]+").setType(MatchType.REGEX).setAlias("items"));
+    }
+    LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
+    globalLabels.put("local", "localhost:8080");
+    metrics = new HttpServerMetricsImpl(new CollectorRegistry(), "http_servers", globalLabels, options);
+    request = stub(HttpServerRequest.class, HttpMethod.GET, "/api/items/12?details=true");
+    response = stub(HttpServerResponse.class, null, null);
+  }
+
+  private static <T> T stub(Class<T> type, HttpMethod method, String uri) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, m, args) -> {
+      switch (m.getName()) {
+        case "method":
+          return method;
+        case "uri":
+          return uri;
+        case "getStatusCode":
+          return 200;
+        default:
+          throw new UnsupportedOperationException(m.getName());
+      }
+    }));
+  }
+
+  @Benchmark
+  public void request() {
+    metrics.responseEnd(metrics.requestBegin(null, request), response);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void requestContended() {
+    metrics.responseEnd(metrics.requestBegin(null, request), response);
+  }
+}
@@ -0,0 +1,82 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving an existing child through {@link AbstractMetrics#labels}, with two global labels, compared to
+ * building the full label values array and resolving it with simpleclient. Check {@code gc.alloc.rate.norm}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LabelsBenchmark {
+
+  private AbstractMetrics metrics;
+  private Family<Counter.Child> family1;
+  private Family<Counter.Child> family2;
+  private Family<Counter.Child> family3;
+  private LinkedHashMap<String, String> globalLabels;
+  private Counter collector;
+
+  @Setup
+  public void setup() {
+    globalLabels = new LinkedHashMap<>();
+    globalLabels.put("local", "localhost:8080");
+    globalLabels.put("instance", "server-1");
+    metrics = new AbstractMetrics(new CollectorRegistry(), "bench", globalLabels, new DropwizardMetricsOptions()) {
+      @Override
+      public void close() {
+      }
+    };
+    family1 = metrics.counter("one", "address");
+    family2 = metrics.counter("two", "address", "side");
+    family3 = metrics.counter("three", "address", "type", "side");
+    collector = (Counter) family3.collector();
+    metrics.labels(family1, "the-address").inc();
+    metrics.labels(family2, "the-address", "remote").inc();
+    metrics.labels(family3, "the-address", "sent", "remote").inc();
+  }
+
+  @Benchmark
+  public Counter.Child labels1() {
+    return metrics.labels(family1, "the-address");
+  }
+
+  @Benchmark
+  public Counter.Child labels2() {
+    return metrics.labels(family2, "the-address", "remote");
+  }
+
+  @Benchmark
+  public Counter.Child labels3() {
+    return metrics.labels(family3, "the-address", "sent", "remote");
+  }
+
+  @Benchmark
+  public Counter.Child simpleclient3() {
+    String[] labels = {"the-address", "sent", "remote"};
+    String[] allLabels = globalLabels.values().toArray(new String[labels.length + globalLabels.size()]);
+    System.arraycopy(labels, 0, allLabels, globalLabels.size(), labels.length);
+    return collector.labels(allLabels);
+  }
+}
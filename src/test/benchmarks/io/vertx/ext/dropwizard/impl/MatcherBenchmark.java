@@ -0,0 +1,105 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.ext.dropwizard.Match;
+import io.vertx.ext.dropwizard.MatchType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of resolving a URI label against 10, 100 and 1000 monitored uris, half of them being regular expressions.
+ * <p>
+ * {@code naive} evaluates every regular expression in order, {@code compiled} walks the compiled matcher without
+ * its cache and {@code cached} goes through {@link Matcher#matches(String)} with a working set fitting the cache.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+  private static final int VALUES = 256;
+
+  @Param({"10", "100", "1000"})
+  public int patterns;
+
+  private Matcher matcher;
+  private List<Pattern> naive;
+  private String[] values;
+  private int index;
+
+  @Setup
+  public void setup() {
+    List<Match> matches = new ArrayList<>();
+    naive = new ArrayList<>();
+    for (int i = 0; i < patterns; i++) {
+      if (i % 2 == 0) {
+        matches.add(new Match().setValue("/service" + i + "/status"));
+      } else {
+        String regex = "/service" + i + "/items/[0-9]+(/details)?";
+        matches.add(new Match().setValue(regex).setType(MatchType.REGEX).setAlias("items" + i));
+        naive.add(Pattern.compile(regex));
+      }
+    }
+    Random random = new Random(0);
+    values = new String[VALUES];
+    for (int i = 0; i < VALUES; i++) {
+      int target = random.nextInt(patterns);
+      switch (i % 4) {
+        case 0:
+          values[i] = "/service" + target + "/status";
+          break;
+        case 3:
+          values[i] = "/unknown/" + random.nextInt(1000);
+          break;
+        default:
+          values[i] = "/service" + (target | 1) + "/items/" + random.nextInt(10_000);
+          break;
+      }
+    }
+    matcher = new Matcher(matches);
+  }
+
+  private String next() {
+    return values[index++ & (VALUES - 1)];
+  }
+
+  @Benchmark
+  public String cached() {
+    return matcher.matches(next());
+  }
+
+  @Benchmark
+  public String compiled() {
+    return matcher.resolve(next());
+  }
+
+  @Benchmark
+  public int naive() {
+    String value = next();
+    for (int i = 0; i < naive.size(); i++) {
+      if (naive.get(i).matcher(value).matches()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,105 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.RemoteLabelStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of the {@link PrometheusTCPMetrics} callbacks of a net server, for each remote label strategy.
+ * <p>
+ * Each thread acts as an event loop with its own connection from its own client port, so with the {@code HOST}
+ * strategy the threads of the contended benchmarks update the same children. Other thread counts can be measured
+ * with {@code -t}.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TCPMetricsBenchmark {
+
+  @Param({"ADDRESS", "HOST"})
+  public RemoteLabelStrategy remoteLabelStrategy;
+
+  private PrometheusTCPMetrics metrics;
+  private final AtomicInteger ports = new AtomicInteger(10000);
+
+  @Setup
+  public void setup() {
+    DropwizardMetricsOptions options = new DropwizardMetricsOptions().setRemoteLabelStrategy(remoteLabelStrategy);
+    LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
+    globalLabels.put("local", "localhost:8080");
+    metrics = new PrometheusTCPMetrics(new CollectorRegistry(), "net_servers", globalLabels, options,
+      Collections.emptyList(), RemoteLabeler.server(options));
+  }
+
+  @State(Scope.Thread)
+  public static class Connection {
+
+    SocketAddress remote;
+    SocketMetric socketMetric;
+    // Not kept open, so that its children are created and removed along with each connection with ADDRESS
+    SocketAddress next;
+
+    @Setup
+    public void setup(TCPMetricsBenchmark benchmark) {
+      remote = SocketAddress.inetSocketAddress(benchmark.ports.getAndIncrement(), "10.0.0.1");
+      socketMetric = benchmark.metrics.connected(remote, null);
+      next = SocketAddress.inetSocketAddress(benchmark.ports.getAndIncrement(), "10.0.0.1");
+    }
+  }
+
+  @Benchmark
+  public void bytesRead(Connection connection) {
+    metrics.bytesRead(connection.socketMetric, connection.remote, 1024);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void bytesReadContended(Connection connection) {
+    metrics.bytesRead(connection.socketMetric, connection.remote, 1024);
+  }
+
+  @Benchmark
+  public void bytesWritten(Connection connection) {
+    metrics.bytesWritten(connection.socketMetric, connection.remote, 1024);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void bytesWrittenContended(Connection connection) {
+    metrics.bytesWritten(connection.socketMetric, connection.remote, 1024);
+  }
+
+  @Benchmark
+  public void connection(Connection connection) {
+    metrics.disconnected(metrics.connected(connection.next, null), connection.next);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void connectionContended(Connection connection) {
+    metrics.disconnected(metrics.connected(connection.next, null), connection.next);
+  }
+}
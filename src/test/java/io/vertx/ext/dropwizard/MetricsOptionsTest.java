@@ -53,6 +53,41 @@ public class MetricsOptionsTest extends VertxTestBase {
 
     assertNull(options.getConfigPath());
     assertEquals("the_config_file", options.setConfigPath("the_config_file").getConfigPath());
+
+    // Test metrics get enabled if the exporter is set to true
+    options.setEnabled(false);
+    assertFalse(options.isExporterEnabled());
+    assertEquals(options, options.setExporterEnabled(true));
+    assertTrue(options.isExporterEnabled());
+    assertTrue(options.isEnabled());
+
+    assertEquals(DropwizardMetricsOptions.DEFAULT_EXPORTER_HOST, options.getExporterHost());
+    assertEquals("localhost", options.setExporterHost("localhost").getExporterHost());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_EXPORTER_PORT, options.getExporterPort());
+    assertEquals(1234, options.setExporterPort(1234).getExporterPort());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_EXPORTER_PATH, options.getExporterPath());
+    assertEquals("/prometheus", options.setExporterPath("/prometheus").getExporterPath());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_EXPORTER_CACHE_MAX_AGE, options.getExporterCacheMaxAge());
+    assertEquals(5000, options.setExporterCacheMaxAge(5000).getExporterCacheMaxAge());
+
+    assertEquals(DropwizardMetricsOptions.DEFAULT_MAX_SERIES_PER_METRIC, options.getMaxSeriesPerMetric());
+    assertEquals(50, options.setMaxSeriesPerMetric(50).getMaxSeriesPerMetric());
+    assertFalse(options.isAggregateBytesPerConnection());
+    assertTrue(options.setAggregateBytesPerConnection(true).isAggregateBytesPerConnection());
+    assertFalse(options.isCollapseReplyShapedAddresses());
+    assertTrue(options.setCollapseReplyShapedAddresses(true).isCollapseReplyShapedAddresses());
+    assertEquals(RemoteLabelStrategy.ADDRESS, options.getRemoteLabelStrategy());
+    assertEquals(RemoteLabelStrategy.CIDR, options.setRemoteLabelStrategy(RemoteLabelStrategy.CIDR).getRemoteLabelStrategy());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_REMOTE_LABEL_CIDR_PREFIX, options.getRemoteLabelCidrPrefix());
+    assertEquals(16, options.setRemoteLabelCidrPrefix(16).getRemoteLabelCidrPrefix());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_REMOTE_LABEL_TOP_K, options.getRemoteLabelTopK());
+    assertEquals(5, options.setRemoteLabelTopK(5).getRemoteLabelTopK());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_SERIES_TTL, options.getSeriesTtl());
+    assertEquals(60000, options.setSeriesTtl(60000).getSeriesTtl());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_EVENT_LOOP_LAG_PROBE_INTERVAL, options.getEventLoopLagProbeInterval());
+    assertEquals(100, options.setEventLoopLagProbeInterval(100).getEventLoopLagProbeInterval());
+    assertEquals(DropwizardMetricsOptions.DEFAULT_THREAD_UTILIZATION_INTERVAL, options.getThreadUtilizationInterval());
+    assertEquals(1000, options.setThreadUtilizationInterval(1000).getThreadUtilizationInterval());
   }
 
   @Test
@@ -70,12 +105,39 @@ public class MetricsOptionsTest extends VertxTestBase {
     options.setJmxDomain(jmxDomain);
     options.setRegistryName(name);
     options.setConfigPath(configPath);
+    options.setExporterHost("localhost");
+    options.setExporterPort(1234);
+    options.setExporterPath("/prometheus");
+    options.setExporterCacheMaxAge(5000);
+    options.setMaxSeriesPerMetric(50);
+    options.setAggregateBytesPerConnection(true);
+    options.setCollapseReplyShapedAddresses(true);
+    options.setRemoteLabelStrategy(RemoteLabelStrategy.TOP_K);
+    options.setRemoteLabelCidrPrefix(16);
+    options.setRemoteLabelTopK(5);
+    options.setSeriesTtl(60000);
+    options.setEventLoopLagProbeInterval(100);
+    options.setThreadUtilizationInterval(1000);
     options = new DropwizardMetricsOptions(options);
     assertEquals(metricsEnabled || jmxEnabled, options.isEnabled());
     assertEquals(jmxEnabled, options.isJmxEnabled());
     assertEquals(jmxDomain, options.getJmxDomain());
     assertEquals(name, options.getRegistryName());
     assertEquals(configPath, options.getConfigPath());
+    assertFalse(options.isExporterEnabled());
+    assertEquals("localhost", options.getExporterHost());
+    assertEquals(1234, options.getExporterPort());
+    assertEquals("/prometheus", options.getExporterPath());
+    assertEquals(5000, options.getExporterCacheMaxAge());
+    assertEquals(50, options.getMaxSeriesPerMetric());
+    assertTrue(options.isAggregateBytesPerConnection());
+    assertTrue(options.isCollapseReplyShapedAddresses());
+    assertEquals(RemoteLabelStrategy.TOP_K, options.getRemoteLabelStrategy());
+    assertEquals(16, options.getRemoteLabelCidrPrefix());
+    assertEquals(5, options.getRemoteLabelTopK());
+    assertEquals(60000, options.getSeriesTtl());
+    assertEquals(100, options.getEventLoopLagProbeInterval());
+    assertEquals(1000, options.getThreadUtilizationInterval());
   }
 
   @Test
@@ -96,12 +158,40 @@ public class MetricsOptionsTest extends VertxTestBase {
       put("registryName", registryName).
       put("jmxEnabled", jmxEnabled).
       put("jmxDomain", jmxDomain).
-      put("configPath", configPath)
+      put("configPath", configPath).
+      put("exporterEnabled", true).
+      put("exporterHost", "localhost").
+      put("exporterPort", 1234).
+      put("exporterPath", "/prometheus").
+      put("exporterCacheMaxAge", 5000).
+      put("maxSeriesPerMetric", 50).
+      put("aggregateBytesPerConnection", true).
+      put("collapseReplyShapedAddresses", true).
+      put("remoteLabelStrategy", "CIDR").
+      put("remoteLabelCidrPrefix", 16).
+      put("remoteLabelTopK", 5).
+      put("seriesTtl", 60000).
+      put("eventLoopLagProbeInterval", 100).
+      put("threadUtilizationInterval", 1000)
     );
     assertEquals(metricsEnabled, options.isEnabled());
     assertEquals(registryName, options.getRegistryName());
     assertEquals(jmxEnabled, options.isJmxEnabled());
     assertEquals(jmxDomain, options.getJmxDomain());
+    assertTrue(options.isExporterEnabled());
+    assertEquals("localhost", options.getExporterHost());
+    assertEquals(1234, options.getExporterPort());
+    assertEquals("/prometheus", options.getExporterPath());
+    assertEquals(5000, options.getExporterCacheMaxAge());
+    assertEquals(50, options.getMaxSeriesPerMetric());
+    assertTrue(options.isAggregateBytesPerConnection());
+    assertTrue(options.isCollapseReplyShapedAddresses());
+    assertEquals(RemoteLabelStrategy.CIDR, options.getRemoteLabelStrategy());
+    assertEquals(16, options.getRemoteLabelCidrPrefix());
+    assertEquals(5, options.getRemoteLabelTopK());
+    assertEquals(60000, options.getSeriesTtl());
+    assertEquals(100, options.getEventLoopLagProbeInterval());
+    assertEquals(1000, options.getThreadUtilizationInterval());
   }
 
   @Test
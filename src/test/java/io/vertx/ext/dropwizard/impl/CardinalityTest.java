@@ -0,0 +1,190 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.vertx.ext.dropwizard.Match;
+import io.vertx.ext.dropwizard.MatchType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class CardinalityTest {
+
+  @Test
+  public void testMatcher() {
+    Matcher matcher = new Matcher(Arrays.asList(
+      new Match().setValue("/users"),
+      new Match().setValue("/users/.*").setType(MatchType.REGEX).setAlias("user"),
+      new Match().setValue("/items/[0-9]+").setType(MatchType.REGEX)));
+    assertFalse(matcher.isEmpty());
+    assertEquals("/users", matcher.matches("/users"));
+    assertEquals("user", matcher.matches("/users/123"));
+    assertEquals("/items/[0-9]+", matcher.matches("/items/42"));
+    assertNull(matcher.matches("/items/foo"));
+    assertTrue(new Matcher(Collections.emptyList()).isEmpty());
+  }
+
+  @Test
+  public void testMatcherKeepsDeclarationOrder() {
+    Matcher matcher = new Matcher(Arrays.asList(
+      new Match().setValue("/api/users/[0-9]+").setType(MatchType.REGEX).setAlias("user"),
+      new Match().setValue("/api/.*").setType(MatchType.REGEX).setAlias("api"),
+      new Match().setValue("/api/users/admin").setType(MatchType.REGEX).setAlias("admin"),
+      new Match().setValue(".*/health").setType(MatchType.REGEX).setAlias("health"),
+      new Match().setValue("/(a+)/\\1").setType(MatchType.REGEX).setAlias("backref")));
+    assertEquals("user", matcher.matches("/api/users/12"));
+    assertEquals("api", matcher.matches("/api/users/admin"));
+    assertEquals("api", matcher.matches("/api/health"));
+    assertEquals("health", matcher.matches("/internal/health"));
+    assertEquals("backref", matcher.matches("/aa/aa"));
+    assertNull(matcher.matches("/aa/a"));
+    assertNull(matcher.matches(""));
+    // Served from the cache
+    assertEquals("user", matcher.matches("/api/users/12"));
+    assertNull(matcher.matches("/aa/a"));
+  }
+
+  @Test
+  public void testMatcherWithGroups() {
+    Matcher matcher = new Matcher(Arrays.asList(
+      new Match().setValue("/items/(a)(b)?").setType(MatchType.REGEX).setAlias("ab"),
+      new Match().setValue("/items/(?:c)(d)").setType(MatchType.REGEX).setAlias("cd"),
+      new Match().setValue("/items/(?<m0>x)(9)").setType(MatchType.REGEX).setAlias("x9"),
+      new Match().setValue("/items/(?<id>[0-9]+)").setType(MatchType.REGEX).setAlias("item"),
+      new Match().setValue("/items/(?<id>[a-z]+)").setType(MatchType.REGEX).setAlias("named"),
+      new Match().setValue("/items/.*").setType(MatchType.REGEX).setAlias("other item")));
+    assertEquals("ab", matcher.matches("/items/a"));
+    assertEquals("cd", matcher.matches("/items/cd"));
+    assertEquals("x9", matcher.matches("/items/x9"));
+    assertEquals("item", matcher.matches("/items/12"));
+    assertEquals("named", matcher.matches("/items/abc"));
+    assertEquals("other item", matcher.matches("/items/-"));
+  }
+
+  @Test
+  public void testMatcherCacheIsBounded() {
+    Matcher matcher = new Matcher(Collections.singletonList(
+      new Match().setValue("/items/[0-9]+").setType(MatchType.REGEX).setAlias("item")));
+    for (int i = 0; i < Matcher.CACHE_SIZE * 3; i++) {
+      assertEquals("item", matcher.matches("/items/" + i));
+    }
+  }
+
+  @Test
+  public void testLiteralPrefix() {
+    assertEquals("/api/", Matcher.literalPrefix("/api/.*"));
+    assertEquals("/ap", Matcher.literalPrefix("/api?/.*"));
+    assertEquals("/api", Matcher.literalPrefix("/api+"));
+    assertEquals("", Matcher.literalPrefix("/a|/b"));
+    assertEquals("", Matcher.literalPrefix("(?i)/api"));
+    assertEquals("/exact", Matcher.literalPrefix("/exact"));
+  }
+
+  @Test
+  public void testFamilyOverflow() {
+    CollectorRegistry registry = new CollectorRegistry();
+    Counter counter = Counter.build("test_requests", "test").labelNames("local", "uri").register(registry);
+    Family<Counter.Child> family = new Family<>(counter, "test_requests", new String[]{"host"}, 2);
+    family.labels("/a").inc();
+    family.labels("/b").inc();
+    family.labels("/c").inc();
+    family.labels("/d").inc();
+    family.labels("/a").inc();
+    assertEquals(2.0, registry.getSampleValue("test_requests", new String[]{"local", "uri"}, new String[]{"host", "/a"}), 0.0);
+    assertEquals(1.0, registry.getSampleValue("test_requests", new String[]{"local", "uri"}, new String[]{"host", "/b"}), 0.0);
+    assertNull(registry.getSampleValue("test_requests", new String[]{"local", "uri"}, new String[]{"host", "/c"}));
+    assertEquals(2.0, registry.getSampleValue("test_requests", new String[]{"local", "uri"}, new String[]{"host", Family.OVERFLOW}), 0.0);
+  }
+
+  @Test
+  public void testFamilyLabels() {
+    CollectorRegistry registry = new CollectorRegistry();
+    Counter counter = Counter.build("test_labels", "test").labelNames("local", "a", "b", "c", "d").register(registry);
+    Family<Counter.Child> family = new Family<>(counter, "test_labels", new String[]{"host"}, 0);
+    family.labels("1", "2", "3", "4").inc();
+    family.labels("1", "2", "3", "4").inc();
+    family.labels("1", "2", "3", "5").inc();
+    assertSame(family.labels("1", "2", "3", "4"), family.labels("1", "2", "3", "4"));
+    assertEquals(2.0, registry.getSampleValue("test_labels", new String[]{"local", "a", "b", "c", "d"}, new String[]{"host", "1", "2", "3", "4"}), 0.0);
+    assertEquals(1.0, registry.getSampleValue("test_labels", new String[]{"local", "a", "b", "c", "d"}, new String[]{"host", "1", "2", "3", "5"}), 0.0);
+
+    Counter three = Counter.build("test_three", "test").labelNames("a", "b", "c").create();
+    Family<Counter.Child> threeFamily = new Family<>(three, "test_three", new String[0], 0);
+    assertSame(threeFamily.labels("1", "2", "3"), threeFamily.labels("1", "2", "3"));
+    assertNotSame(threeFamily.labels("1", "2", "3"), threeFamily.labels("1", "3", "2"));
+    assertSame(three.labels("1", "3", "2"), threeFamily.labels("1", "3", "2"));
+
+    Counter none = Counter.build("test_none", "test").create();
+    Family<Counter.Child> noneFamily = new Family<>(none, "test_none", new String[0], 0);
+    noneFamily.labels().inc();
+    assertEquals(1.0, none.labels().get(), 0.0);
+  }
+
+  @Test
+  public void testFamilyRemove() {
+    Counter counter = Counter.build("test_remove", "test").labelNames("local", "remote", "name").create();
+    Family<Counter.Child> family = new Family<>(counter, "test_remove", new String[]{"host"}, 2);
+    family.labels("a", "x").inc();
+    family.labels("a", "y").inc();
+    family.labels("c", "x").inc();
+    assertEquals(3, counter.collect().get(0).samples.size());
+    family.remove("a");
+    // The overflow child is kept
+    assertEquals(1, counter.collect().get(0).samples.size());
+    // Removed series free room for new ones
+    family.labels("b", "x").inc();
+    family.labels("b", "y").inc();
+    assertEquals(3, counter.collect().get(0).samples.size());
+    family.remove("b", "x");
+    assertEquals(2, counter.collect().get(0).samples.size());
+    family.remove("unknown");
+    assertEquals(1.0, family.labels("b", "y").get(), 0.0);
+  }
+
+  @Test
+  public void testFamilyExpire() {
+    Counter counter = Counter.build("test_expire", "test").labelNames("uri").create();
+    Family<Counter.Child> family = new Family<>(counter, "test_expire", new String[0], 0);
+    family.labels("/a").inc();
+    family.labels("/b").inc();
+    assertEquals(0, family.expire(0, 100, values -> false));
+    family.labels("/a").inc();
+    assertEquals(0, family.expire(60, 100, values -> false));
+    assertEquals(1, family.expire(120, 100, values -> false));
+    assertEquals(1, counter.collect().get(0).samples.size());
+    assertEquals(0, family.expire(170, 100, values -> true));
+    assertEquals(1, family.expire(170, 100, values -> false));
+    assertEquals(0, counter.collect().get(0).samples.size());
+    // Recreated from zero
+    family.labels("/a").inc();
+    assertEquals(1.0, counter.labels("/a").get(), 0.0);
+
+    Gauge gauge = Gauge.build("test_expire_gauge", "test").labelNames("address").create();
+    Family<Gauge.Child> gauges = new Family<>(gauge, "test_expire_gauge", new String[0], 0);
+    gauges.labels("busy").inc();
+    gauges.labels("free").inc();
+    gauges.labels("free").dec();
+    assertEquals(0, gauges.expire(0, 100, values -> false));
+    // Gauges are only removed when zero
+    assertEquals(1, gauges.expire(200, 100, values -> false));
+    assertEquals(1.0, gauge.labels("busy").get(), 0.0);
+    assertEquals(1, gauge.collect().get(0).samples.size());
+  }
+
+  @Test
+  public void testFamilyUnbounded() {
+    Counter counter = Counter.build("test_unbounded", "test").labelNames("uri").create();
+    Family<Counter.Child> family = new Family<>(counter, "test_unbounded", new String[0], 0);
+    for (int i = 0; i < 100; i++) {
+      family.labels("/" + i).inc();
+    }
+    assertEquals(100, counter.collect().get(0).samples.size());
+  }
+}
@@ -0,0 +1,153 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Counter;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.RemoteLabelStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class CollectorCacheTest {
+
+  private static final String[] LABELS = {"local", "remote"};
+
+  private TestRegistry registry;
+  private TestRegistry.Samples samples;
+  private DropwizardMetricsOptions options;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    samples = registry.samples(LABELS);
+    options = new DropwizardMetricsOptions().setRemoteLabelStrategy(RemoteLabelStrategy.HOST);
+  }
+
+  @Test
+  public void testScaledServersShareChildren() {
+    PrometheusTCPMetrics metrics1 = registry.netServerMetrics("localhost:8080", options);
+    PrometheusTCPMetrics metrics2 = registry.netServerMetrics("localhost:8080", options);
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketMetric socketMetric1 = metrics1.connected(remote, "remote");
+    SocketMetric socketMetric2 = metrics2.connected(remote, "remote");
+    assertSame(socketMetric1.connections, socketMetric2.connections);
+    assertEquals(2.0, samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"), 0.0);
+    // The child is still held by the connection of the other instance
+    metrics1.disconnected(socketMetric1, remote);
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"), 0.0);
+    metrics1.close();
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"), 0.0);
+    metrics2.bytesRead(socketMetric2, remote, 10);
+    assertEquals(10.0, samples.get("net_servers_bytes_read_sum", "localhost:8080", "10.0.0.1"), 0.0);
+    metrics2.disconnected(socketMetric2, remote);
+    assertNull(samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"));
+    metrics2.close();
+    assertFalse(registry.metricFamilySamples().hasMoreElements());
+  }
+
+  @Test
+  public void testServersOnDifferentAddresses() {
+    PrometheusTCPMetrics metrics1 = registry.netServerMetrics("localhost:8080", options);
+    PrometheusTCPMetrics metrics2 = registry.netServerMetrics("localhost:8081", options);
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    metrics1.connected(remote, "remote");
+    metrics2.connected(remote, "remote");
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"), 0.0);
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8081", "10.0.0.1"), 0.0);
+    // The series of the closed server are removed, the collector is kept for the other one
+    metrics1.close();
+    assertNull(samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"));
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8081", "10.0.0.1"), 0.0);
+    metrics2.close();
+    assertFalse(registry.metricFamilySamples().hasMoreElements());
+    // Registered again
+    PrometheusTCPMetrics metrics3 = registry.netServerMetrics("localhost:8080", options);
+    metrics3.connected(remote, "remote");
+    assertEquals(1.0, samples.get("net_servers_connections", "localhost:8080", "10.0.0.1"), 0.0);
+  }
+
+  @Test
+  public void testAcquiredOncePerMetrics() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", options);
+    Family<?> family = metrics.histogram("test", "remote");
+    assertSame(family, metrics.histogram("test", "remote"));
+    metrics.close();
+    assertFalse(registry.metricFamilySamples().hasMoreElements());
+  }
+
+  private List<MetricFamilySamples> select(List<String> names, List<String> prefixes) {
+    Enumeration<MetricFamilySamples> families = VertxMetricsFactoryImpl.collectorCache(registry)
+      .filteredMetricFamilySamples(registry, names, prefixes);
+    return Collections.list(families);
+  }
+
+  private List<String> selectNames(List<String> names, List<String> prefixes) {
+    List<String> selected = new ArrayList<>();
+    for (MetricFamilySamples family : select(names, prefixes)) {
+      selected.add(family.name);
+    }
+    return selected;
+  }
+
+  @Test
+  public void testFilteredFamilies() {
+    PrometheusTCPMetrics metrics1 = registry.netServerMetrics("localhost:8080", options);
+    PrometheusTCPMetrics metrics2 = registry.netServerMetrics("localhost:8081", options);
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    metrics1.connected(remote, "remote");
+    metrics2.connected(remote, "remote");
+    Counter.build("other_total", "Not a Vert.x metric").register(registry).inc();
+    List<MetricFamilySamples> connections = select(Collections.singletonList("net_servers_connections"), Collections.emptyList());
+    assertEquals(1, connections.size());
+    assertEquals(2, connections.get(0).samples.size());
+    // Sorted and deduplicated
+    assertEquals(Arrays.asList("net_servers_bytes_read", "net_servers_bytes_written", "net_servers_connections"),
+      selectNames(Collections.singletonList("net_servers_connections"), Arrays.asList("net_servers_bytes", "net_servers_by")));
+    // Not indexed, resolved by the registry
+    assertEquals(Arrays.asList("net_servers_connections", "other_total"),
+      selectNames(Arrays.asList("other_total", "net_servers_connections"), Collections.singletonList("other")));
+    // Sample names of indexed histograms only keep these samples, unless the whole family is selected
+    List<MetricFamilySamples> count = select(Collections.singletonList("net_servers_bytes_read_count"), Collections.emptyList());
+    assertEquals(1, count.size());
+    assertEquals(2, count.get(0).samples.size());
+    List<MetricFamilySamples> family = select(Arrays.asList("net_servers_bytes_read", "net_servers_bytes_read_count"), Collections.emptyList());
+    assertEquals(1, family.size());
+    assertTrue(family.get(0).samples.size() > 2);
+    assertEquals(Collections.emptyList(), select(Collections.singletonList("unknown"), Collections.singletonList("unknown")));
+    metrics1.close();
+    metrics2.close();
+    // Removed along with the collectors
+    assertEquals(Collections.emptyList(), select(Collections.emptyList(), Collections.singletonList("net_")));
+  }
+
+  @Test
+  public void testRegistryIsNotRetained() throws Exception {
+    TestRegistry registry = new TestRegistry();
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", options);
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "10.0.0.1"), "remote");
+    WeakReference<CollectorCache> cache = new WeakReference<>(VertxMetricsFactoryImpl.collectorCache(registry));
+    WeakReference<TestRegistry> ref = new WeakReference<>(registry);
+    registry = null;
+    metrics = null;
+    // The cache is only weakly reachable through its registry, stale caches are dropped when the map is accessed
+    for (int i = 0; i < 100 && (ref.get() != null || cache.get() != null); i++) {
+      System.gc();
+      Thread.sleep(10);
+      VertxMetricsFactoryImpl.collectorCache(this.registry);
+    }
+    assertNull(ref.get());
+    assertNull(cache.get());
+  }
+}
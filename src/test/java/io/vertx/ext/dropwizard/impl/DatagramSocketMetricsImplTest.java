@@ -0,0 +1,70 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class DatagramSocketMetricsImplTest {
+
+  private static final String[] LOCAL = {"local"};
+
+  private final DropwizardMetricsOptions options = new DropwizardMetricsOptions();
+  private TestRegistry registry;
+  private TestRegistry.Samples samples;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    samples = registry.samples(LOCAL);
+  }
+
+  @Test
+  public void testListeningSockets() {
+    DatagramSocketMetricsImpl socket1 = new DatagramSocketMetricsImpl(registry, "datagram", new LinkedHashMap<>(), options);
+    DatagramSocketMetricsImpl socket2 = new DatagramSocketMetricsImpl(registry, "datagram", new LinkedHashMap<>(), options);
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    socket1.listening("localhost", SocketAddress.inetSocketAddress(514, "127.0.0.1"));
+    socket2.listening("localhost", SocketAddress.inetSocketAddress(1514, "127.0.0.1"));
+    assertEquals(2.0, registry.getSampleValue("datagram_sockets"), 0.0);
+    socket1.bytesRead(null, remote, 100);
+    socket1.bytesRead(null, remote, 50);
+    socket1.bytesWritten(null, remote, 10);
+    socket2.bytesRead(null, remote, 1);
+    socket1.exceptionOccurred(null, remote, new Exception());
+    assertEquals(150.0, samples.get("datagram_bytes_read_sum", "localhost:514"), 0.0);
+    // The count of a bytes histogram is the number of packets
+    assertEquals(2.0, samples.get("datagram_bytes_read_count", "localhost:514"), 0.0);
+    assertEquals(10.0, samples.get("datagram_bytes_written_sum", "localhost:514"), 0.0);
+    assertEquals(1.0, samples.get("datagram_bytes_read_count", "localhost:1514"), 0.0);
+    assertEquals(1.0, samples.get("datagram_exceptions", "localhost:514"), 0.0);
+    socket1.close();
+    assertNull(samples.get("datagram_bytes_read_count", "localhost:514"));
+    assertNull(samples.get("datagram_bytes_written_count", "localhost:514"));
+    assertNull(samples.get("datagram_exceptions", "localhost:514"));
+    assertEquals(1.0, registry.getSampleValue("datagram_sockets"), 0.0);
+    assertEquals(1.0, samples.get("datagram_bytes_read_count", "localhost:1514"), 0.0);
+    socket2.close();
+    assertNull(registry.getSampleValue("datagram_sockets"));
+  }
+
+  @Test
+  public void testSendingSockets() {
+    DatagramSocketMetricsImpl socket1 = new DatagramSocketMetricsImpl(registry, "datagram", new LinkedHashMap<>(), options);
+    DatagramSocketMetricsImpl socket2 = new DatagramSocketMetricsImpl(registry, "datagram", new LinkedHashMap<>(), options);
+    SocketAddress remote = SocketAddress.inetSocketAddress(514, "10.0.0.1");
+    socket1.bytesWritten(null, remote, 10);
+    socket2.bytesWritten(null, remote, 20);
+    socket1.close();
+    assertEquals(30.0, samples.get("datagram_bytes_written_sum", "?"), 0.0);
+    assertEquals(2.0, samples.get("datagram_bytes_written_count", "?"), 0.0);
+    socket2.close();
+  }
+}
@@ -0,0 +1,100 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class EndpointMetricTest {
+
+  private static final String[] REMOTE = {"remote"};
+
+  private TestRegistry registry;
+  private TestRegistry.Samples samples;
+  private HttpClientReporter reporter;
+  private TestClock clock;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    samples = registry.samples(REMOTE, "localhost:8080");
+    reporter = new HttpClientReporter(registry, "http_clients", "client", new LinkedHashMap<>(), new DropwizardMetricsOptions());
+    clock = new TestClock();
+    reporter.clock = clock;
+  }
+
+  @Test
+  public void testConcurrentTtfb() {
+    EndpointMetric endpoint = new EndpointMetric(reporter, "localhost:8080");
+    RequestMetric first = reporter.createRequestMetric("GET", "/first", endpoint);
+    RequestMetric second = reporter.createRequestMetric("GET", "/second", endpoint);
+    first.requestEnd = clock.nanoTime();
+    clock.advance(50);
+    second.requestEnd = clock.nanoTime();
+    clock.advance(10);
+    // Multiplexed, the second response comes first
+    endpoint.observeTtfb(second);
+    assertEquals(0.01, samples.get("http_clients_ttfb_sum"), 1E-9);
+    endpoint.observeTtfb(first);
+    assertEquals(2.0, samples.get("http_clients_ttfb_count"), 0.0);
+    assertEquals(0.07, samples.get("http_clients_ttfb_sum"), 1E-9);
+    // A response beginning before its request ended, or a pushed response, has no ttfb
+    endpoint.observeTtfb(reporter.createRequestMetric("GET", "/third", endpoint));
+    endpoint.observeTtfb(first);
+    assertEquals(2.0, samples.get("http_clients_ttfb_count"), 0.0);
+  }
+
+  @Test
+  public void testQueueDelay() {
+    EndpointMetric endpoint = new EndpointMetric(reporter, "localhost:8080");
+    long first = endpoint.enqueued();
+    clock.advance(20);
+    long second = endpoint.enqueued();
+    assertEquals(2.0, samples.get("http_clients_queue_size"), 0.0);
+    clock.advance(30);
+    // The second request fails to get a connection first
+    endpoint.dequeued(second);
+    assertEquals(0.03, samples.get("http_clients_queue_delay_sum"), 1E-9);
+    clock.advance(10);
+    endpoint.dequeued(first);
+    assertEquals(0.0, samples.get("http_clients_queue_size"), 0.0);
+    assertEquals(2.0, samples.get("http_clients_queue_delay_count"), 0.0);
+    assertEquals(0.09, samples.get("http_clients_queue_delay_sum"), 1E-9);
+  }
+
+  @Test
+  public void testEndpointLifecycle() {
+    // Two clients sharing the reporter, to the same endpoint
+    EndpointMetric endpoint1 = new EndpointMetric(reporter, "localhost:8080");
+    EndpointMetric endpoint2 = new EndpointMetric(reporter, "localhost:8080");
+    endpoint1.incConnections();
+    endpoint2.incConnections();
+    RequestMetric request = reporter.createRequestMetric("GET", "/", endpoint1);
+    endpoint1.incInUse();
+    assertEquals(2.0, samples.get("http_clients_open_netsockets"), 0.0);
+    assertEquals(1.0, samples.get("http_clients_in_use"), 0.0);
+    reporter.responseEnd(request, 200);
+    assertEquals(0.0, samples.get("http_clients_in_use"), 0.0);
+    assertEquals(1.0, samples.get("http_clients_usage_count"), 0.0);
+    assertEquals(registry.getSampleValue("http_clients_requests_sum", new String[]{"method", "uri"}, new String[]{"GET", "/"}),
+      samples.get("http_clients_usage_sum"), 0.0);
+    endpoint1.decConnections();
+    endpoint1.close();
+    assertEquals(1.0, samples.get("http_clients_open_netsockets"), 0.0);
+    assertEquals(1.0, samples.get("http_clients_usage_count"), 0.0);
+    endpoint2.decConnections();
+    endpoint2.close();
+    assertNull(samples.get("http_clients_open_netsockets"));
+    assertNull(samples.get("http_clients_in_use"));
+    assertNull(samples.get("http_clients_usage_count"));
+    assertNull(samples.get("http_clients_ttfb_count"));
+    assertNull(samples.get("http_clients_queue_delay_count"));
+    assertNull(samples.get("http_clients_queue_size"));
+  }
+}
@@ -0,0 +1,112 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.impl.VertxInternal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class EventLoopLagProbeTest {
+
+  private static final String[] EVENT_LOOP = {"event_loop"};
+  // Long enough for the probes to only run when the tests run them
+  private static final long INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+  private Vertx vertx;
+  private TestRegistry.Samples samples;
+  private AbstractMetrics metrics;
+  private TestClock clock;
+  private EventLoopLagProbe probe;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(2));
+    TestRegistry registry = new TestRegistry();
+    samples = registry.samples(EVENT_LOOP);
+    metrics = registry.metrics("vertx");
+    clock = new TestClock();
+    probe = new EventLoopLagProbe((VertxInternal) vertx, INTERVAL, clock, metrics.histogram("event_loop_lag", "event_loop"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    probe.close();
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Run a probe on its event loop, as its timer would.
+   *
+   * @return the name of the event loop
+   */
+  private static String run(EventLoopLagProbe.Probe probe) throws Exception {
+    return probe.eventLoop.submit(() -> {
+      probe.run();
+      return Thread.currentThread().getName();
+    }).get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testLateProbe() throws Exception {
+    probe.start();
+    List<EventLoopLagProbe.Probe> probes = probe.probes();
+    assertEquals(2, probes.size());
+    // The first loop runs its probe when due, the second one is busy and runs it 200ms late
+    clock.advance(INTERVAL);
+    String onTime = run(probes.get(0));
+    clock.advance(200);
+    String late = run(probes.get(1));
+    assertNotEquals(onTime, late);
+    assertEquals(1.0, samples.get("vertx_event_loop_lag_count", onTime), 0.0);
+    assertEquals(0.0, samples.get("vertx_event_loop_lag_sum", onTime), 0.0);
+    assertEquals(1.0, samples.get("vertx_event_loop_lag_count", late), 0.0);
+    assertEquals(0.2, samples.get("vertx_event_loop_lag_sum", late), 1E-9);
+    // Each run schedules the next one, due an interval later
+    clock.advance(INTERVAL);
+    run(probes.get(1));
+    assertEquals(2.0, samples.get("vertx_event_loop_lag_count", late), 0.0);
+    assertEquals(0.2, samples.get("vertx_event_loop_lag_sum", late), 1E-9);
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    probe.start();
+    List<EventLoopLagProbe.Probe> probes = probe.probes();
+    clock.advance(INTERVAL);
+    String eventLoop = run(probes.get(0));
+    probe.close();
+    assertTrue(probe.probes().isEmpty());
+    // A run already due when the probe is closed observes nothing
+    run(probes.get(0));
+    assertEquals(1.0, samples.get("vertx_event_loop_lag_count", eventLoop), 0.0);
+    probe.start();
+    assertTrue(probe.probes().isEmpty());
+  }
+
+  @Test
+  public void testProbesRunOnTheirTimer() throws Exception {
+    probe.close();
+    probe = new EventLoopLagProbe((VertxInternal) vertx, 10, Clock.SYSTEM, metrics.histogram("event_loop_lag", "event_loop"));
+    probe.start();
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((samples.get("vertx_event_loop_lag_count", "vert.x-eventloop-thread-0") == null
+      || samples.get("vertx_event_loop_lag_count", "vert.x-eventloop-thread-1") == null)
+      && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNotNull(samples.get("vertx_event_loop_lag_count", "vert.x-eventloop-thread-0"));
+    assertNotNull(samples.get("vertx_event_loop_lag_count", "vert.x-eventloop-thread-1"));
+  }
+}
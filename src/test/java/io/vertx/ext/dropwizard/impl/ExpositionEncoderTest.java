@@ -0,0 +1,292 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.Summary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class ExpositionEncoderTest {
+
+  private CollectorRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+  }
+
+  private ByteBuf encode(ExpositionEncoder encoder) {
+    return encode(encoder, new SeriesKeys());
+  }
+
+  private ByteBuf encode(ExpositionEncoder encoder, SeriesKeys keys) {
+    ByteBuf buf = Unpooled.buffer();
+    Enumeration<MetricFamilySamples> families = registry.metricFamilySamples();
+    while (families.hasMoreElements()) {
+      MetricFamilySamples family = families.nextElement();
+      encoder.writeHeader(buf, family, keys);
+      for (int index = 0; index < family.samples.size(); ) {
+        index = encoder.writeSamples(buf, family, index, keys);
+      }
+    }
+    encoder.writeFooter(buf);
+    keys.completed();
+    return buf;
+  }
+
+  private static String writeDouble(double value) {
+    ByteBuf buf = Unpooled.buffer();
+    TextFormatEncoder.writeDouble(buf, value);
+    return buf.toString(StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void testNegotiate() {
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate(null));
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate("*/*"));
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate("application/json"));
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate("text/plain;version=0.0.4"));
+    assertSame(OpenMetricsEncoder.INSTANCE, ExpositionEncoder.negotiate("application/openmetrics-text;version=1.0.0,"
+      + "application/openmetrics-text;version=0.0.1;q=0.75,text/plain;version=0.0.4;q=0.5,*/*;q=0.1"));
+    assertSame(ProtobufEncoder.INSTANCE, ExpositionEncoder.negotiate("application/vnd.google.protobuf;"
+      + "proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.8,application/openmetrics-text;version=1.0.0;q=0.7,"
+      + "text/plain;version=0.0.4;q=0.3,*/*;q=0.1"));
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate("application/vnd.google.protobuf;"
+      + "proto=io.prometheus.client.MetricFamily;encoding=text"));
+    assertSame(TextFormatEncoder.INSTANCE, ExpositionEncoder.negotiate("application/openmetrics-text;q=0, text/plain"));
+  }
+
+  @Test
+  public void testWriteDouble() {
+    assertEquals("0.0", writeDouble(0));
+    assertEquals("1.0", writeDouble(1));
+    assertEquals("-2.5", writeDouble(-2.5));
+    assertEquals("0.1", writeDouble(0.1));
+    assertEquals("0.005", writeDouble(0.005));
+    assertEquals("123.456", writeDouble(123.456));
+    assertEquals("10000000.0", writeDouble(1e7));
+    assertEquals("+Inf", writeDouble(Double.POSITIVE_INFINITY));
+    assertEquals("-Inf", writeDouble(Double.NEGATIVE_INFINITY));
+    assertEquals("NaN", writeDouble(Double.NaN));
+    // No short decimal form
+    assertEquals(Double.toString(0.1 + 0.2), writeDouble(0.1 + 0.2));
+    assertEquals("1.0E-12", writeDouble(1e-12));
+    assertEquals("1.0E20", writeDouble(1e20));
+    assertEquals("-0.0", writeDouble(-0.0));
+    Random random = new Random(0);
+    for (int i = 0; i < 100_000; i++) {
+      double value;
+      switch (i % 3) {
+        case 0:
+          value = Double.longBitsToDouble(random.nextLong());
+          break;
+        case 1:
+          value = random.nextInt(1_000_000) / 1000d;
+          break;
+        default:
+          value = random.nextDouble() * 1000;
+          break;
+      }
+      String written = writeDouble(value);
+      if (value == value) {
+        assertEquals(written, value, Double.parseDouble(written), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testOpenMetrics() {
+    Counter.build("requests_total", "A \"counted\" thing").labelNames("uri").register(registry).labels("/a").inc();
+    Counter.build("errors", "Errors").register(registry).inc(2);
+    Histogram.build("latency", "Latency").buckets(1).register(registry).observe(0.5);
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("legacy", Type.UNTYPED, "Legacy",
+          Collections.singletonList(new MetricFamilySamples.Sample("legacy", Collections.emptyList(), Collections.emptyList(), 3))));
+      }
+    }.register(registry);
+    String text = encode(OpenMetricsEncoder.INSTANCE).toString(StandardCharsets.UTF_8);
+    assertTrue(text.contains("# HELP requests A \\\"counted\\\" thing\n# TYPE requests counter\nrequests_total{uri=\"/a\"} 1.0\n"));
+    assertTrue(text.contains("# TYPE errors counter\nerrors_total 2.0\n"));
+    assertTrue(text.contains("# TYPE latency histogram\nlatency_bucket{le=\"1.0\"} 1.0\nlatency_bucket{le=\"+Inf\"} 1.0\n"
+      + "latency_count 1.0\nlatency_sum 0.5\n"));
+    assertTrue(text.contains("# TYPE legacy unknown\nlegacy 3.0\n"));
+    assertTrue(text.endsWith("\n# EOF\n"));
+    // The Prometheus text format keeps the names
+    text = encode(TextFormatEncoder.INSTANCE).toString(StandardCharsets.UTF_8);
+    assertTrue(text.contains("# HELP requests_total A \"counted\" thing\n# TYPE requests_total counter\nrequests_total{uri=\"/a\"} 1.0\n"));
+    assertTrue(text.contains("# TYPE legacy untyped\n"));
+    assertFalse(text.contains("# EOF"));
+  }
+
+  @Test
+  public void testProtobuf() {
+    Counter.build("requests_total", "Requests é").labelNames("uri", "method").register(registry).labels("/a", "GET").inc(3);
+    Histogram histogram = Histogram.build("latency", "Latency").labelNames("uri").buckets(1, 2).register(registry);
+    histogram.labels("/a").observe(0.5);
+    histogram.labels("/a").observe(1.5);
+    histogram.labels("/a").observe(3);
+    histogram.labels("/b").observe(1);
+    Summary.build("sizes", "Sizes").quantile(0.5, 0.05).register(registry).observe(42);
+    ByteBuf buf = encode(ProtobufEncoder.INSTANCE);
+    Map<String, Map<Integer, List<Object>>> families = new HashMap<>();
+    while (buf.isReadable()) {
+      int size = (int) readVarint(buf);
+      Map<Integer, List<Object>> family = message(buf.readSlice(size));
+      families.put(string(family, 1), family);
+    }
+    assertEquals(3, families.size());
+
+    Map<Integer, List<Object>> counter = families.get("requests_total");
+    assertEquals("Requests é", string(counter, 2));
+    assertEquals(0L, counter.get(3).get(0));
+    assertEquals(1, counter.get(4).size());
+    Map<Integer, List<Object>> metric = message((ByteBuf) counter.get(4).get(0));
+    assertEquals(2, metric.get(1).size());
+    Map<Integer, List<Object>> label = message((ByteBuf) metric.get(1).get(0));
+    assertEquals("uri", string(label, 1));
+    assertEquals("/a", string(label, 2));
+    label = message((ByteBuf) metric.get(1).get(1));
+    assertEquals("method", string(label, 1));
+    assertEquals("GET", string(label, 2));
+    assertEquals(3.0, (Double) message((ByteBuf) metric.get(3).get(0)).get(1).get(0), 0.0);
+
+    Map<Integer, List<Object>> latency = families.get("latency");
+    assertEquals(4L, latency.get(3).get(0));
+    assertEquals(2, latency.get(4).size());
+    metric = message((ByteBuf) latency.get(4).get(0));
+    assertEquals(1, metric.get(1).size());
+    assertEquals("/a", string(message((ByteBuf) metric.get(1).get(0)), 2));
+    Map<Integer, List<Object>> value = message((ByteBuf) metric.get(7).get(0));
+    assertEquals(3L, value.get(1).get(0));
+    assertEquals(5.0, (Double) value.get(2).get(0), 0.0);
+    // The +Inf bucket is implied by the sample count
+    assertEquals(2, value.get(3).size());
+    Map<Integer, List<Object>> bucket = message((ByteBuf) value.get(3).get(0));
+    assertEquals(1L, bucket.get(1).get(0));
+    assertEquals(1.0, (Double) bucket.get(2).get(0), 0.0);
+    bucket = message((ByteBuf) value.get(3).get(1));
+    assertEquals(2L, bucket.get(1).get(0));
+    assertEquals(2.0, (Double) bucket.get(2).get(0), 0.0);
+    metric = message((ByteBuf) latency.get(4).get(1));
+    assertEquals("/b", string(message((ByteBuf) metric.get(1).get(0)), 2));
+    assertEquals(1L, message((ByteBuf) metric.get(7).get(0)).get(1).get(0));
+
+    Map<Integer, List<Object>> sizes = families.get("sizes");
+    assertEquals(2L, sizes.get(3).get(0));
+    metric = message((ByteBuf) sizes.get(4).get(0));
+    assertNull(metric.get(1));
+    value = message((ByteBuf) metric.get(4).get(0));
+    assertEquals(1L, value.get(1).get(0));
+    assertEquals(42.0, (Double) value.get(2).get(0), 0.0);
+    Map<Integer, List<Object>> quantile = message((ByteBuf) value.get(3).get(0));
+    assertEquals(0.5, (Double) quantile.get(1).get(0), 0.0);
+    assertEquals(42.0, (Double) quantile.get(2).get(0), 0.0);
+  }
+
+  @Test
+  public void testSeriesKeys() {
+    Counter counter = Counter.build("requests_total", "Requests").labelNames("uri").register(registry);
+    counter.labels("/a").inc();
+    counter.labels("/b\"").inc();
+    Histogram histogram = Histogram.build("latency", "Latency").labelNames("uri").buckets(1).register(registry);
+    histogram.labels("/a").observe(0.5);
+    histogram.labels("/b").observe(2);
+    // Shares the label values list of its samples with another family, with another label name
+    List<String> values = Collections.singletonList("/a");
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("shared", Type.GAUGE, "Shared", Collections.singletonList(
+          new MetricFamilySamples.Sample("shared", Collections.singletonList("path"), values, 1))));
+      }
+    }.register(registry);
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("shared2", Type.GAUGE, "Shared", Collections.singletonList(
+          new MetricFamilySamples.Sample("shared2", Collections.singletonList("uri"), values, 2))));
+      }
+    }.register(registry);
+    for (ExpositionEncoder encoder : new ExpositionEncoder[]{TextFormatEncoder.INSTANCE, OpenMetricsEncoder.INSTANCE, ProtobufEncoder.INSTANCE}) {
+      SeriesKeys keys = new SeriesKeys();
+      ByteBuf expected = encode(encoder);
+      assertEquals(expected, encode(encoder, keys));
+      // From the keys of the previous scrape
+      assertEquals(expected, encode(encoder, keys));
+      counter.remove("/a");
+      histogram.labels("/c").observe(0.1);
+      expected = encode(encoder);
+      assertEquals(expected, encode(encoder, keys));
+      assertEquals(expected, encode(encoder, keys));
+      counter.labels("/a").inc();
+      histogram.remove("/c");
+    }
+    String text = encode(TextFormatEncoder.INSTANCE).toString(StandardCharsets.UTF_8);
+    assertTrue(text.contains("requests_total{uri=\"/b\\\"\"} 1.0\n"));
+    assertTrue(text.contains("latency_bucket{uri=\"/b\",le=\"1.0\"} 0.0\nlatency_bucket{uri=\"/b\",le=\"+Inf\"} 1.0\nlatency_count{uri=\"/b\"} 1.0\n"));
+    assertTrue(text.contains("shared{path=\"/a\"} 1.0\n"));
+    assertTrue(text.contains("shared2{uri=\"/a\"} 2.0\n"));
+  }
+
+  /**
+   * @return the fields of a message: varints as {@code Long}, doubles as {@code Double}, the others as {@code ByteBuf}
+   */
+  private static Map<Integer, List<Object>> message(ByteBuf buf) {
+    Map<Integer, List<Object>> fields = new HashMap<>();
+    while (buf.isReadable()) {
+      int tag = (int) readVarint(buf);
+      Object value;
+      switch (tag & 7) {
+        case 0:
+          value = readVarint(buf);
+          break;
+        case 1:
+          value = Double.longBitsToDouble(buf.readLongLE());
+          break;
+        case 2:
+          value = buf.readSlice((int) readVarint(buf));
+          break;
+        default:
+          throw new AssertionError("Unexpected wire type " + (tag & 7));
+      }
+      fields.computeIfAbsent(tag >>> 3, field -> new ArrayList<>()).add(value);
+    }
+    return fields;
+  }
+
+  private static String string(Map<Integer, List<Object>> message, int field) {
+    return ((ByteBuf) message.get(field).get(0)).toString(StandardCharsets.UTF_8);
+  }
+
+  private static long readVarint(ByteBuf buf) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buf.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class PoolMetricsImplTest {
+
+  private static final String[] LABELS = {"pool_type", "pool_name"};
+  private static final String[] VALUES = {"worker", "vert.x-worker-thread"};
+
+  private TestRegistry registry;
+  private TestRegistry.Samples samples;
+  private TestClock clock;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    samples = registry.samples(LABELS, VALUES);
+    clock = new TestClock();
+  }
+
+  private PoolMetricsImpl createMetrics(String name, int maxSize) {
+    PoolMetricsImpl metrics = new PoolMetricsImpl(registry, "pools",
+      TestRegistry.globalLabels("pool_type", "worker", "pool_name", name), new DropwizardMetricsOptions(), maxSize);
+    metrics.clock = clock;
+    return metrics;
+  }
+
+  @Test
+  public void testTaskLifecycle() {
+    PoolMetricsImpl metrics = createMetrics("vert.x-worker-thread", 4);
+    assertEquals(4.0, samples.get("pools_max_pool_size"), 0.0);
+    assertEquals(0.0, samples.get("pools_pool_ratio"), 0.0);
+    PoolMetricsImpl.Task task1 = metrics.submitted();
+    PoolMetricsImpl.Task task2 = metrics.submitted();
+    PoolMetricsImpl.Task rejected = metrics.submitted();
+    assertEquals(3.0, samples.get("pools_queue_size"), 0.0);
+    metrics.rejected(rejected);
+    clock.advance(20);
+    task1 = metrics.begin(task1);
+    task2 = metrics.begin(task2);
+    assertEquals(0.0, samples.get("pools_queue_size"), 0.0);
+    assertEquals(2.0, samples.get("pools_in_use"), 0.0);
+    assertEquals(0.5, samples.get("pools_pool_ratio"), 0.0);
+    assertEquals(3.0, samples.get("pools_queue_delay_count"), 0.0);
+    assertEquals(0.04, samples.get("pools_queue_delay_sum"), 1E-9);
+    clock.advance(10);
+    metrics.end(task1, true);
+    metrics.end(task2, false);
+    assertEquals(0.0, samples.get("pools_in_use"), 0.0);
+    assertEquals(0.0, samples.get("pools_pool_ratio"), 0.0);
+    assertEquals(2.0, samples.get("pools_usage_count"), 0.0);
+    assertEquals(0.02, samples.get("pools_usage_sum"), 1E-9);
+  }
+
+  @Test
+  public void testUnboundedPool() {
+    createMetrics("vert.x-worker-thread", -1);
+    assertNull(samples.get("pools_pool_ratio"));
+    assertNull(samples.get("pools_max_pool_size"));
+    assertEquals(0.0, samples.get("pools_in_use"), 0.0);
+  }
+
+  @Test
+  public void testClose() {
+    PoolMetricsImpl metrics1 = createMetrics("vert.x-worker-thread", 4);
+    PoolMetricsImpl metrics2 = createMetrics("other", 4);
+    metrics1.close();
+    assertNull(samples.get("pools_pool_ratio"));
+    assertNull(samples.get("pools_in_use"));
+    assertEquals(0.0, registry.samples(LABELS).get("pools_pool_ratio", "worker", "other"), 0.0);
+    metrics2.close();
+  }
+}
@@ -0,0 +1,279 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.Match;
+import io.vertx.ext.dropwizard.MatchType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class PrometheusEventBusMetricsTest {
+
+  private static final String[] ADDRESS = {"address"};
+  private static final String[] ADDRESS_ORIGIN = {"address", "origin"};
+
+  private TestRegistry registry;
+  private TestRegistry.Samples address;
+  private TestRegistry.Samples addressOrigin;
+  private TestClock clock;
+  private PrometheusEventBusMetrics metrics;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    address = registry.samples(ADDRESS);
+    addressOrigin = registry.samples(ADDRESS_ORIGIN);
+    clock = new TestClock();
+    metrics = new PrometheusEventBusMetrics(registry, "eventbus", new DropwizardMetricsOptions());
+    metrics.clock = clock;
+  }
+
+  @Test
+  public void testHandleMessages() {
+    PrometheusEventBusMetrics.HandlerMetric handler1 = metrics.handlerRegistered("foo", null);
+    PrometheusEventBusMetrics.HandlerMetric handler2 = metrics.handlerRegistered("foo", null);
+    assertEquals(2.0, address.get("eventbus_handlers", "foo"), 0.0);
+    metrics.scheduleMessage(handler1, true);
+    metrics.scheduleMessage(handler2, true);
+    metrics.scheduleMessage(handler1, false);
+    assertEquals(2.0, addressOrigin.get("eventbus_pending", "foo", "local"), 0.0);
+    assertEquals(1.0, addressOrigin.get("eventbus_pending", "foo", "remote"), 0.0);
+    // Handlers run concurrently on their own context
+    metrics.beginHandleMessage(handler1, true);
+    metrics.beginHandleMessage(handler2, true);
+    metrics.endHandleMessage(handler1, null);
+    metrics.beginHandleMessage(handler1, false);
+    metrics.endHandleMessage(handler2, new Exception());
+    metrics.endHandleMessage(handler1, null);
+    assertEquals(0.0, addressOrigin.get("eventbus_pending", "foo", "local"), 0.0);
+    assertEquals(0.0, addressOrigin.get("eventbus_pending", "foo", "remote"), 0.0);
+    assertEquals(3.0, address.get("eventbus_process_time_count", "foo"), 0.0);
+    assertEquals(1.0, address.get("eventbus_process_failures", "foo"), 0.0);
+    // Ended without having begun
+    metrics.endHandleMessage(handler1, null);
+    assertEquals(3.0, address.get("eventbus_process_time_count", "foo"), 0.0);
+    metrics.handlerUnregistered(handler1);
+    assertEquals(1.0, address.get("eventbus_handlers", "foo"), 0.0);
+    metrics.handlerUnregistered(handler2);
+    assertNull(address.get("eventbus_handlers", "foo"));
+  }
+
+  @Test
+  public void testQueueTime() {
+    PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered("foo", null);
+    metrics.scheduleMessage(handler, true);
+    metrics.scheduleMessage(handler, false);
+    clock.advance(20);
+    metrics.scheduleMessage(handler, true);
+    metrics.beginHandleMessage(handler, true);
+    metrics.endHandleMessage(handler, null);
+    metrics.beginHandleMessage(handler, true);
+    metrics.endHandleMessage(handler, null);
+    assertEquals(2.0, addressOrigin.get("eventbus_queue_time_count", "foo", "local"), 0.0);
+    assertEquals(0.0, addressOrigin.get("eventbus_queue_time_count", "foo", "remote"), 0.0);
+    // The first message waited, the second one did not
+    assertEquals(0.02, addressOrigin.get("eventbus_queue_time_sum", "foo", "local"), 1E-9);
+    metrics.beginHandleMessage(handler, false);
+    metrics.endHandleMessage(handler, null);
+    assertEquals(1.0, addressOrigin.get("eventbus_queue_time_count", "foo", "remote"), 0.0);
+    assertEquals(0.02, addressOrigin.get("eventbus_queue_time_sum", "foo", "remote"), 1E-9);
+    // Begun without having been scheduled
+    metrics.beginHandleMessage(handler, false);
+    assertEquals(1.0, addressOrigin.get("eventbus_queue_time_count", "foo", "remote"), 0.0);
+  }
+
+  @Test
+  public void testScheduleTimes() {
+    PrometheusEventBusMetrics.ScheduleTimes times = new PrometheusEventBusMetrics.ScheduleTimes(4);
+    assertEquals(0, times.next());
+    for (int i = 1; i <= 3; i++) {
+      times.scheduled(i);
+    }
+    assertEquals(1, times.next());
+    for (int i = 4; i <= 9; i++) {
+      times.scheduled(i);
+    }
+    // Only the last 4 times are kept, the older messages are measured from the oldest one
+    for (int i = 2; i <= 6; i++) {
+      assertEquals(6, times.next());
+    }
+    assertEquals(7, times.next());
+    assertEquals(8, times.next());
+    assertEquals(9, times.next());
+    assertEquals(0, times.next());
+    times.scheduled(10);
+    assertEquals(10, times.next());
+  }
+
+  @Test
+  public void testScheduleTimesNotPublished() {
+    PrometheusEventBusMetrics.ScheduleTimes times = new PrometheusEventBusMetrics.ScheduleTimes(4);
+    // A sender claims its slot, another sender schedules and runs its message first
+    long claimed = times.claim();
+    times.scheduled(2);
+    assertEquals(0, times.next());
+    assertEquals(2, times.next());
+    times.publish(claimed, 1);
+    assertEquals(0, times.next());
+    assertEquals(0, times.unbegun());
+  }
+
+  @Test
+  public void testScheduleTimesDiscardedMessage() {
+    PrometheusEventBusMetrics.ScheduleTimes times = new PrometheusEventBusMetrics.ScheduleTimes(4);
+    times.scheduled(1);
+    times.scheduled(2);
+    times.scheduled(3);
+    assertEquals(1, times.next());
+    // The second message is discarded by a paused handler, the third is measured from its time
+    assertEquals(2, times.next());
+    assertEquals(1, times.unbegun());
+  }
+
+  @Test
+  public void testRemovedHandler() {
+    PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered("foo", null);
+    metrics.scheduleMessage(handler, true);
+    metrics.scheduleMessage(handler, true);
+    metrics.scheduleMessage(handler, false);
+    metrics.beginHandleMessage(handler, true);
+    metrics.endHandleMessage(handler, null);
+    assertEquals(1.0, addressOrigin.get("eventbus_pending", "foo", "local"), 0.0);
+    assertEquals(1.0, addressOrigin.get("eventbus_pending", "foo", "remote"), 0.0);
+    // The messages delivered to a removed handler are dropped
+    PrometheusEventBusMetrics.HandlerMetric other = metrics.handlerRegistered("foo", null);
+    metrics.handlerUnregistered(handler);
+    assertEquals(0.0, addressOrigin.get("eventbus_pending", "foo", "local"), 0.0);
+    assertEquals(0.0, addressOrigin.get("eventbus_pending", "foo", "remote"), 0.0);
+    // The handler registered again starts its own schedule times
+    metrics.scheduleMessage(other, true);
+    metrics.beginHandleMessage(other, true);
+    metrics.endHandleMessage(other, null);
+    assertEquals(2.0, addressOrigin.get("eventbus_queue_time_count", "foo", "local"), 0.0);
+    assertEquals(0.0, addressOrigin.get("eventbus_pending", "foo", "local"), 0.0);
+  }
+
+  @Test
+  public void testReplyAddresses() {
+    for (int i = 0; i < 10; i++) {
+      String replyAddress = String.valueOf(i);
+      PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered(replyAddress, "foo");
+      metrics.messageSent("foo", false, true, false);
+      metrics.messageSent(replyAddress, false, true, false);
+      metrics.scheduleMessage(handler, true);
+      metrics.beginHandleMessage(handler, true);
+      metrics.endHandleMessage(handler, null);
+      metrics.handlerUnregistered(handler);
+    }
+    PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered("10", "foo");
+    metrics.replyFailure("10", ReplyFailure.TIMEOUT);
+    metrics.handlerUnregistered(handler);
+    // Ordinary addresses, and replies to the reply handlers of other nodes, keep their address
+    metrics.handlerRegistered("42", null);
+    metrics.messageSent("42", false, true, false);
+    metrics.messageSent("6a1b6f54-3b2c-4d4e-9f00-0123456789ab", false, false, true);
+    TestRegistry.Samples messages = registry.samples(new String[]{"address", "status", "origin"});
+    assertEquals(10.0, messages.get("eventbus_messages", "foo", "sent", "local"), 0.0);
+    assertEquals(10.0, messages.get("eventbus_messages", "__reply__", "sent", "local"), 0.0);
+    assertEquals(10.0, address.get("eventbus_process_time_count", "__reply__"), 0.0);
+    assertNull(address.get("eventbus_process_time_count", "0"));
+    TestRegistry.Samples failures = registry.samples(new String[]{"address", "failure"});
+    assertEquals(1.0, failures.get("eventbus_reply_failures", "__reply__", "TIMEOUT"), 0.0);
+    assertEquals(1.0, address.get("eventbus_handlers", "42"), 0.0);
+    assertEquals(1.0, messages.get("eventbus_messages", "42", "sent", "local"), 0.0);
+    assertEquals(1.0, messages.get("eventbus_messages", "6a1b6f54-3b2c-4d4e-9f00-0123456789ab", "sent", "remote"), 0.0);
+    assertNull(messages.get("eventbus_messages", "__reply__", "sent", "remote"));
+  }
+
+  @Test
+  public void testCollapseReplyShapedAddresses() {
+    metrics = new PrometheusEventBusMetrics(registry, "eventbus", new DropwizardMetricsOptions()
+      .setCollapseReplyShapedAddresses(true));
+    metrics.handlerRegistered("42", null);
+    metrics.messageSent("42", false, true, false);
+    metrics.messageSent("6a1b6f54-3b2c-4d4e-9f00-0123456789ab", false, false, true);
+    metrics.messageSent("foo", false, true, false);
+    TestRegistry.Samples messages = registry.samples(new String[]{"address", "status", "origin"});
+    assertEquals(1.0, address.get("eventbus_handlers", "__reply__"), 0.0);
+    assertEquals(1.0, messages.get("eventbus_messages", "__reply__", "sent", "local"), 0.0);
+    assertEquals(1.0, messages.get("eventbus_messages", "__reply__", "sent", "remote"), 0.0);
+    assertEquals(1.0, messages.get("eventbus_messages", "foo", "sent", "local"), 0.0);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    PrometheusEventBusMetrics.HandlerMetric reply = metrics.handlerRegistered("1", "foo");
+    metrics.messageSent("foo", false, true, false);
+    clock.advance(20);
+    metrics.messageSent("1", false, true, false);
+    metrics.scheduleMessage(reply, true);
+    metrics.beginHandleMessage(reply, true);
+    metrics.endHandleMessage(reply, null);
+    metrics.handlerUnregistered(reply);
+    assertEquals(1.0, address.get("eventbus_round_trip_count", "foo"), 0.0);
+    assertEquals(0.02, address.get("eventbus_round_trip_sum", "foo"), 1E-9);
+    assertNull(address.get("eventbus_round_trip_count", "__reply__"));
+    // Timed out, no reply is handled
+    reply = metrics.handlerRegistered("2", "foo");
+    metrics.replyFailure("foo", ReplyFailure.TIMEOUT);
+    metrics.handlerUnregistered(reply);
+    assertEquals(1.0, address.get("eventbus_round_trip_count", "foo"), 0.0);
+    // Not a reply handler
+    PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered("foo", null);
+    metrics.scheduleMessage(handler, true);
+    metrics.beginHandleMessage(handler, true);
+    metrics.endHandleMessage(handler, null);
+    assertEquals(1.0, address.get("eventbus_round_trip_count", "foo"), 0.0);
+  }
+
+  @Test
+  public void testIsReplyAddress() {
+    assertTrue(PrometheusEventBusMetrics.isReplyAddress("1"));
+    assertTrue(PrometheusEventBusMetrics.isReplyAddress("9223372036854775807"));
+    assertTrue(PrometheusEventBusMetrics.isReplyAddress("6a1b6f54-3b2c-4d4e-9f00-0123456789ab"));
+    assertFalse(PrometheusEventBusMetrics.isReplyAddress(""));
+    assertFalse(PrometheusEventBusMetrics.isReplyAddress("foo"));
+    assertFalse(PrometheusEventBusMetrics.isReplyAddress("12a"));
+    assertFalse(PrometheusEventBusMetrics.isReplyAddress("6a1b6f54-3b2c-4d4e-9f00-0123456789aZ"));
+    assertFalse(PrometheusEventBusMetrics.isReplyAddress("6a1b6f54x3b2c-4d4e-9f00-0123456789ab"));
+  }
+
+  @Test
+  public void testMonitoredHandlers() {
+    metrics = new PrometheusEventBusMetrics(registry, "eventbus", new DropwizardMetricsOptions()
+      .addMonitoredEventBusHandler(new Match().setValue("orders"))
+      .addMonitoredEventBusHandler(new Match().setValue("users\\..*").setType(MatchType.REGEX).setAlias("users")));
+    metrics.handlerRegistered("orders", null);
+    metrics.handlerRegistered("users.create", null);
+    metrics.handlerRegistered("users.delete", null);
+    metrics.handlerRegistered("something", null);
+    metrics.handlerRegistered("12", "orders");
+    assertEquals(1.0, address.get("eventbus_handlers", "orders"), 0.0);
+    assertEquals(2.0, address.get("eventbus_handlers", "users"), 0.0);
+    assertEquals(1.0, address.get("eventbus_handlers", "other"), 0.0);
+    assertEquals(1.0, address.get("eventbus_handlers", "__reply__"), 0.0);
+    assertNull(address.get("eventbus_handlers", "something"));
+  }
+
+  @Test
+  public void testRegisteredHandlersKeepTheirSeries() {
+    SeriesSweeper sweeper = new SeriesSweeper(null, 100);
+    metrics.sweptBy(sweeper);
+    PrometheusEventBusMetrics.HandlerMetric handler = metrics.handlerRegistered("foo", null);
+    metrics.scheduleMessage(handler, true);
+    metrics.beginHandleMessage(handler, true);
+    metrics.endHandleMessage(handler, null);
+    sweeper.sweep(0);
+    assertEquals(0, sweeper.sweep(1000));
+    metrics.handlerUnregistered(handler);
+    assertEquals(3, sweeper.sweep(2000));
+    assertNull(address.get("eventbus_process_time_count", "foo"));
+    assertNull(addressOrigin.get("eventbus_pending", "foo", "local"));
+    assertNull(addressOrigin.get("eventbus_queue_time_count", "foo", "local"));
+  }
+}
@@ -0,0 +1,491 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class PrometheusExporterTest extends VertxTestBase {
+
+  private static final int PORT = 9191;
+
+  private TestRegistry registry;
+  private PrometheusExporter exporter;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    registry = new TestRegistry();
+    exporter = new PrometheusExporter(vertx, registry, new DropwizardMetricsOptions()
+      .setExporterEnabled(true)
+      .setExporterHost("localhost")
+      .setExporterPort(PORT));
+    CountDownLatch latch = new CountDownLatch(1);
+    exporter.start(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    exporter.close();
+    super.tearDown();
+  }
+
+  @Test
+  public void testScrape() {
+    Gauge gauge = Gauge.build("test_gauge", "A \"test\" gauge\nwith \\ escapes").labelNames("label").register(registry);
+    gauge.labels("with \"quotes\" and \u00e9").set(2.5);
+    Counter.build("test_counter", "A test counter").register(registry).inc();
+    HttpClient client = vertx.createHttpClient();
+    client.getNow(PORT, "localhost", "/metrics", resp -> {
+      assertEquals(200, resp.statusCode());
+      assertEquals(TextFormatEncoder.CONTENT_TYPE, resp.getHeader("Content-Type"));
+      resp.bodyHandler(body -> {
+        String text = body.toString("UTF-8");
+        assertTrue(text.contains("# HELP test_gauge A \"test\" gauge\\nwith \\\\ escapes\n"));
+        assertTrue(text.contains("# TYPE test_gauge gauge\n"));
+        assertTrue(text.contains("test_gauge{label=\"with \\\"quotes\\\" and \u00e9\"} 2.5\n"));
+        assertTrue(text.contains("# TYPE test_counter counter\n"));
+        assertTrue(text.contains("test_counter 1.0\n"));
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testScrapeSpansSeveralChunks() {
+    Gauge gauge = Gauge.build("test_large", "A large family").labelNames("id").register(registry);
+    int series = 20_000;
+    for (int i = 0; i < series; i++) {
+      gauge.labels("series-" + i).set(i);
+    }
+    HttpClient client = vertx.createHttpClient();
+    client.getNow(PORT, "localhost", "/metrics", resp -> {
+      assertEquals(200, resp.statusCode());
+      Buffer body = Buffer.buffer();
+      int[] chunks = {0};
+      resp.handler(chunk -> {
+        chunks[0]++;
+        body.appendBuffer(chunk);
+      });
+      resp.endHandler(v -> {
+        assertTrue(body.length() > PrometheusExporter.CHUNK_SIZE);
+        String[] lines = body.toString("UTF-8").split("\n");
+        assertEquals(series + 2, lines.length);
+        assertTrue(chunks[0] > 1);
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  private void scrape(int port, Handler<String> handler) {
+    vertx.createHttpClient().getNow(port, "localhost", "/metrics", resp -> {
+      assertEquals(200, resp.statusCode());
+      resp.bodyHandler(body -> handler.handle(body.toString("UTF-8")));
+    });
+  }
+
+  @Test
+  public void testNotCachedByDefault() {
+    Counter counter = Counter.build("test_counter", "A test counter").register(registry);
+    counter.inc();
+    scrape(PORT, text1 -> {
+      assertTrue(text1.contains("test_counter 1.0\n"));
+      counter.inc();
+      scrape(PORT, text2 -> {
+        assertTrue(text2.contains("test_counter 2.0\n"));
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testScrapeNotKeptWithoutCache() {
+    Counter.build("test_counter", "A test counter").register(registry).inc();
+    scrape(PORT, text -> {
+      assertTrue(text.contains("test_counter 1.0\n"));
+      assertEquals(0, exporter.keptScrapes());
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testCachedScrapeExpires() throws Exception {
+    PrometheusExporter cached = new PrometheusExporter(vertx, registry, new DropwizardMetricsOptions()
+      .setExporterHost("localhost")
+      .setExporterPort(PORT + 1)
+      .setExporterCacheMaxAge(100));
+    CountDownLatch latch = new CountDownLatch(1);
+    cached.start(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+    Counter.build("test_counter", "A test counter").register(registry).inc();
+    scrape(PORT + 1, text -> {
+      assertEquals(1, cached.keptScrapes());
+      vertx.setTimer(300, id -> {
+        assertEquals(0, cached.keptScrapes());
+        cached.close();
+        testComplete();
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testCachedScrape() throws Exception {
+    PrometheusExporter cached = new PrometheusExporter(vertx, registry, new DropwizardMetricsOptions()
+      .setExporterHost("localhost")
+      .setExporterPort(PORT + 1)
+      .setExporterCacheMaxAge(200));
+    CountDownLatch latch = new CountDownLatch(1);
+    cached.start(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+    Counter counter = Counter.build("test_counter", "A test counter").register(registry);
+    counter.inc();
+    scrape(PORT + 1, text1 -> {
+      counter.inc();
+      scrape(PORT + 1, text2 -> {
+        // Within the max age
+        assertEquals(text1, text2);
+        assertTrue(text2.contains("test_counter 1.0\n"));
+        vertx.setTimer(300, id -> scrape(PORT + 1, text3 -> {
+          assertTrue(text3.contains("test_counter 2.0\n"));
+          cached.close();
+          testComplete();
+        }));
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testConcurrentScrapesShareTheCollection() throws Exception {
+    // Cached, so that the chunks encoded before a request arrives are kept for it
+    PrometheusExporter cached = new PrometheusExporter(vertx, registry, new DropwizardMetricsOptions()
+      .setExporterHost("localhost")
+      .setExporterPort(PORT + 1)
+      .setExporterCacheMaxAge(60_000));
+    CountDownLatch latch = new CountDownLatch(1);
+    cached.start(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+    int scrapes = 3;
+    AtomicInteger collections = new AtomicInteger();
+    AtomicInteger started = new AtomicInteger();
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        collections.incrementAndGet();
+        // An endless family, until every scrape got its response: they arrive while the first one is encoded
+        List<MetricFamilySamples.Sample> samples = new AbstractList<MetricFamilySamples.Sample>() {
+          private int produced;
+          @Override
+          public MetricFamilySamples.Sample get(int index) {
+            produced = index + 1;
+            if (index % 1000 == 0) {
+              try {
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+            return new MetricFamilySamples.Sample("test_slow", Collections.singletonList("id"),
+              Collections.singletonList("series-" + index), index);
+          }
+          @Override
+          public int size() {
+            return started.get() < scrapes && produced < 1_000_000 ? Integer.MAX_VALUE : produced;
+          }
+        };
+        return Collections.singletonList(new MetricFamilySamples("test_slow", Type.GAUGE, "A slow family", samples));
+      }
+    }.register(registry);
+    List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < scrapes; i++) {
+      vertx.createHttpClient().getNow(PORT + 1, "localhost", "/metrics", resp -> {
+        started.incrementAndGet();
+        resp.bodyHandler(body -> {
+          bodies.add(body.toString("UTF-8"));
+          if (bodies.size() == scrapes) {
+            assertEquals(1, collections.get());
+            assertTrue(bodies.get(0).endsWith("\n"));
+            assertEquals(bodies.get(0), bodies.get(1));
+            assertEquals(bodies.get(0), bodies.get(2));
+            cached.close();
+            testComplete();
+          }
+        });
+      });
+    }
+    await();
+  }
+
+  private void scrape(int port, String acceptEncoding, Handler<String> handler) {
+    vertx.createHttpClient().get(port, "localhost", "/metrics", resp -> {
+      assertEquals(200, resp.statusCode());
+      assertEquals(acceptEncoding, resp.getHeader("Content-Encoding"));
+      assertEquals("Accept, Accept-Encoding", resp.getHeader("Vary"));
+      resp.bodyHandler(body -> {
+        try {
+          InputStream in = new ByteArrayInputStream(body.getBytes());
+          in = acceptEncoding.equals("gzip") ? new GZIPInputStream(in) : new InflaterInputStream(in);
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          byte[] bytes = new byte[4096];
+          for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+            out.write(bytes, 0, read);
+          }
+          // Compressed
+          assertTrue(body.length() * 4 < out.size());
+          handler.handle(out.toString("UTF-8"));
+        } catch (IOException e) {
+          fail(e);
+        }
+      });
+    }).putHeader("Accept-Encoding", acceptEncoding).end();
+  }
+
+  @Test
+  public void testCompressedScrape() {
+    Gauge gauge = Gauge.build("test_large", "A large family").labelNames("id").register(registry);
+    int series = 20_000;
+    for (int i = 0; i < series; i++) {
+      gauge.labels("series-" + i).set(i);
+    }
+    scrape(PORT, text -> scrape(PORT, "gzip", gzip -> {
+      assertEquals(text, gzip);
+      scrape(PORT, "deflate", deflate -> {
+        assertEquals(text, deflate);
+        testComplete();
+      });
+    }));
+    await();
+  }
+
+  @Test
+  public void testCompressedScrapeReleasesChunks() {
+    int series = 100_000;
+    int[] retained = {-1, -1};
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new AbstractList<MetricFamilySamples.Sample>() {
+          @Override
+          public MetricFamilySamples.Sample get(int index) {
+            if (index == series - 1) {
+              // Encoded on the context of the exporter, partway through the last chunks
+              retained[0] = exporter.retainedChunks(null);
+              retained[1] = exporter.retainedChunks("gzip");
+            }
+            return new MetricFamilySamples.Sample("test_large", Collections.singletonList("id"),
+              Collections.singletonList("series-" + index), index);
+          }
+          @Override
+          public int size() {
+            return series;
+          }
+        };
+        return Collections.singletonList(new MetricFamilySamples("test_large", Type.GAUGE, "A large family", samples));
+      }
+    }.register(registry);
+    scrape(PORT, "gzip", text -> {
+      assertEquals(series + 2, text.split("\n").length);
+      // Every encoded chunk compressed, every compressed chunk written
+      assertEquals(0, retained[0]);
+      assertTrue("Retained " + retained[1] + " compressed chunks", retained[1] <= 1);
+      assertEquals(0, exporter.keptScrapes());
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testCompressedCachedScrape() throws Exception {
+    PrometheusExporter cached = new PrometheusExporter(vertx, registry, new DropwizardMetricsOptions()
+      .setExporterHost("localhost")
+      .setExporterPort(PORT + 1)
+      .setExporterCacheMaxAge(1000));
+    CountDownLatch latch = new CountDownLatch(1);
+    cached.start(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+    Counter counter = Counter.build("test_counter", "A test counter").register(registry);
+    for (int i = 0; i < 1000; i++) {
+      counter.inc();
+      Counter.build("test_counter_" + i, "A test counter").register(registry);
+    }
+    scrape(PORT + 1, text -> {
+      counter.inc();
+      // Compressed from the cached chunks
+      scrape(PORT + 1, "gzip", gzip -> {
+        assertEquals(text, gzip);
+        scrape(PORT + 1, "gzip", gzip2 -> {
+          assertEquals(text, gzip2);
+          cached.close();
+          testComplete();
+        });
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testNegotiatedFormat() {
+    Counter.build("test_counter_total", "A test counter").register(registry).inc();
+    HttpClient client = vertx.createHttpClient();
+    client.get(PORT, "localhost", "/metrics", resp -> {
+      assertEquals(OpenMetricsEncoder.CONTENT_TYPE, resp.getHeader("Content-Type"));
+      resp.bodyHandler(body -> {
+        String text = body.toString("UTF-8");
+        assertTrue(text.contains("# TYPE test_counter counter\ntest_counter_total 1.0\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+        client.get(PORT, "localhost", "/metrics", resp2 -> {
+          assertEquals(ProtobufEncoder.CONTENT_TYPE, resp2.getHeader("Content-Type"));
+          resp2.bodyHandler(body2 -> {
+            // A single delimited MetricFamily
+            assertEquals(body2.length() - 1, body2.getByte(0));
+            testComplete();
+          });
+        }).putHeader("Accept", "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited").end();
+      });
+    }).putHeader("Accept", "application/openmetrics-text;version=1.0.0,text/plain;version=0.0.4;q=0.5").end();
+    await();
+  }
+
+  @Test
+  public void testFilteredScrape() {
+    AbstractMetrics metrics = registry.metrics("vertx");
+    metrics.counter("http_servers_requests", "method").labels("GET").inc();
+    metrics.gauge("http_servers_connections").labels().set(2);
+    metrics.gauge("eventbus_handlers").labels().set(3);
+    Counter.build("other_total", "Not a Vert.x metric").register(registry).inc();
+    vertx.createHttpClient().getNow(PORT, "localhost", "/metrics?name%5B%5D=vertx_http_servers_requests&name[]=other_total", resp -> {
+      resp.bodyHandler(body -> {
+        String text = body.toString("UTF-8");
+        assertTrue(text.contains("vertx_http_servers_requests{method=\"GET\"} 1.0\n"));
+        assertTrue(text.contains("other_total 1.0\n"));
+        assertFalse(text.contains("vertx_http_servers_connections"));
+        assertFalse(text.contains("vertx_eventbus_handlers"));
+        vertx.createHttpClient().getNow(PORT, "localhost", "/metrics?prefix[]=vertx_http_", resp2 -> {
+          resp2.bodyHandler(body2 -> {
+            String text2 = body2.toString("UTF-8");
+            assertTrue(text2.contains("vertx_http_servers_requests{method=\"GET\"} 1.0\n"));
+            assertTrue(text2.contains("vertx_http_servers_connections 2.0\n"));
+            assertFalse(text2.contains("vertx_eventbus_handlers"));
+            assertFalse(text2.contains("other_total"));
+            // The full scrape is not affected
+            scrape(PORT, text3 -> {
+              assertTrue(text3.contains("vertx_eventbus_handlers 3.0\n"));
+              assertTrue(text3.contains("vertx_http_servers_requests{method=\"GET\"} 1.0\n"));
+              metrics.close();
+              testComplete();
+            });
+          });
+        });
+      });
+    });
+    await();
+  }
+
+  @Test
+  public void testCompressorCatchesUpOneChunkAtATime() throws Exception {
+    ScrapeChunks source = new ScrapeChunks();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 3; i++) {
+      String chunk = "test_counter_" + i + " " + i + ".0\n";
+      source.add(Buffer.buffer(chunk));
+      text.append(chunk);
+    }
+    ScrapeCompressor.Pool pool = new ScrapeCompressor.Pool(6);
+    ScrapeCompressor compressor = new ScrapeCompressor(pool, ScrapeCompressor.GZIP);
+    for (int i = 1; i <= 3; i++) {
+      assertTrue(compressor.isBehind(source, true));
+      compressor.compressNext(source, true);
+      assertEquals(i, compressor.consumed());
+    }
+    assertTrue(compressor.isDone());
+    assertFalse(compressor.isBehind(source, true));
+    Buffer body = Buffer.buffer();
+    for (int i = 0; i < compressor.chunks().size(); i++) {
+      body.appendBuffer(compressor.chunks().get(i));
+    }
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(body.getBytes()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] bytes = new byte[4096];
+    for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+      out.write(bytes, 0, read);
+    }
+    assertEquals(text.toString(), out.toString("UTF-8"));
+    pool.close();
+  }
+
+  @Test
+  public void testNegotiateEncoding() {
+    assertNull(ScrapeCompressor.negotiate(null));
+    assertNull(ScrapeCompressor.negotiate(""));
+    assertNull(ScrapeCompressor.negotiate("identity, br"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("gzip"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("deflate, gzip"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("x-gzip"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("*"));
+    assertEquals("deflate", ScrapeCompressor.negotiate("DEFLATE"));
+    assertEquals("deflate", ScrapeCompressor.negotiate("gzip;q=0.5, deflate"));
+    assertEquals("deflate", ScrapeCompressor.negotiate("gzip; q=0, deflate;q=0.1"));
+    assertNull(ScrapeCompressor.negotiate("gzip;q=0"));
+    // Explicit codings take precedence over *
+    assertEquals("deflate", ScrapeCompressor.negotiate("gzip;q=0, *"));
+    assertEquals("deflate", ScrapeCompressor.negotiate("*, gzip;q=0"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("deflate;q=0.2, *;q=0.5"));
+    assertNull(ScrapeCompressor.negotiate("gzip;q=0, deflate;q=0, *"));
+    assertNull(ScrapeCompressor.negotiate("*;q=0"));
+    // Identity preferred
+    assertNull(ScrapeCompressor.negotiate("identity, gzip;q=0.5"));
+    assertNull(ScrapeCompressor.negotiate("gzip;q=0.5, deflate;q=0.4, identity;q=0.8"));
+    assertNull(ScrapeCompressor.negotiate("identity;q=0.8, *;q=0.5"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("identity;q=0.5, gzip;q=0.8"));
+    assertEquals("gzip", ScrapeCompressor.negotiate("identity, gzip"));
+    assertEquals("deflate", ScrapeCompressor.negotiate("identity;q=0.1, deflate"));
+  }
+
+  @Test
+  public void testUnknownPath() {
+    HttpClient client = vertx.createHttpClient();
+    client.getNow(PORT, "localhost", "/foo", resp -> {
+      assertEquals(404, resp.statusCode());
+      testComplete();
+    });
+    await();
+  }
+
+  @Test
+  public void testMethodNotAllowed() {
+    HttpClient client = vertx.createHttpClient();
+    client.request(HttpMethod.POST, PORT, "localhost", "/metrics", resp -> {
+      assertEquals(405, resp.statusCode());
+      testComplete();
+    }).end();
+    await();
+  }
+}
@@ -0,0 +1,242 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.Collector;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.Match;
+import io.vertx.ext.dropwizard.MatchType;
+import io.vertx.ext.dropwizard.RemoteLabelStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class PrometheusTCPMetricsTest {
+
+  private static final String[] LABELS = {"local", "remote"};
+  private static final String REMOTE = "10.0.0.1:5000";
+
+  private TestRegistry registry;
+  private TestRegistry.Samples samples;
+
+  @Before
+  public void setUp() {
+    registry = new TestRegistry();
+    samples = registry.samples(LABELS, "localhost:8080");
+  }
+
+  @Test
+  public void testConnectionLifecycle() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", new DropwizardMetricsOptions());
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketMetric socketMetric = metrics.connected(remote, "remote");
+    assertEquals("10.0.0.1:5000", socketMetric.remote);
+    assertEquals(1.0, samples.get("net_servers_connections", REMOTE), 0.0);
+    metrics.bytesRead(socketMetric, remote, 100);
+    metrics.bytesRead(socketMetric, remote, 50);
+    metrics.bytesWritten(socketMetric, remote, 10);
+    assertEquals(150.0, samples.get("net_servers_bytes_read_sum", REMOTE), 0.0);
+    assertEquals(2.0, samples.get("net_servers_bytes_read_count", REMOTE), 0.0);
+    assertEquals(10.0, samples.get("net_servers_bytes_written_sum", REMOTE), 0.0);
+    metrics.exceptionOccurred(socketMetric, remote, new Exception());
+    assertNull(samples.get("net_servers_bytes_read_total", REMOTE));
+    metrics.disconnected(socketMetric, remote);
+    // Only the zeroed gauge is removed, the traffic of the connection is kept until it expires
+    assertNull(samples.get("net_servers_connections", REMOTE));
+    assertEquals(2.0, samples.get("net_servers_bytes_read_count", REMOTE), 0.0);
+    assertEquals(10.0, samples.get("net_servers_bytes_written_sum", REMOTE), 0.0);
+    assertEquals(1.0, registry.getSampleValue("net_servers_exceptions", new String[]{"local", "remote", "name"},
+      new String[]{"localhost:8080", "10.0.0.1:5000", Exception.class.toString()}), 0.0);
+  }
+
+  @Test
+  public void testHostRemoteLabel() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080",
+      new DropwizardMetricsOptions().setRemoteLabelStrategy(RemoteLabelStrategy.HOST));
+    SocketAddress remote1 = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketAddress remote2 = SocketAddress.inetSocketAddress(5001, "10.0.0.1");
+    SocketMetric socketMetric1 = metrics.connected(remote1, "remote");
+    SocketMetric socketMetric2 = metrics.connected(remote2, "remote");
+    metrics.bytesRead(socketMetric1, remote1, 100);
+    metrics.bytesRead(socketMetric2, remote2, 50);
+    assertEquals(2.0, samples.get("net_servers_connections", "10.0.0.1"), 0.0);
+    assertEquals(150.0, samples.get("net_servers_bytes_read_sum", "10.0.0.1"), 0.0);
+    metrics.disconnected(socketMetric1, remote1);
+    assertEquals(1.0, samples.get("net_servers_connections", "10.0.0.1"), 0.0);
+    metrics.disconnected(socketMetric2, remote2);
+    // Only the zeroed gauge is removed
+    assertNull(samples.get("net_servers_connections", "10.0.0.1"));
+    assertEquals(150.0, samples.get("net_servers_bytes_read_sum", "10.0.0.1"), 0.0);
+    SocketMetric socketMetric3 = metrics.connected(remote1, "remote");
+    assertEquals(1.0, samples.get("net_servers_connections", "10.0.0.1"), 0.0);
+    metrics.disconnected(socketMetric3, remote1);
+  }
+
+  @Test
+  public void testCidrRemoteLabel() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", new DropwizardMetricsOptions()
+      .setRemoteLabelStrategy(RemoteLabelStrategy.CIDR)
+      .setRemoteLabelCidrPrefix(16));
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "10.1.2.3"), "remote");
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "10.1.200.4"), "remote");
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "2001:db8:1:2:3:4:5:6"), "remote");
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "example.com"), "remote");
+    assertEquals(2.0, samples.get("net_servers_connections", "10.1.0.0/16"), 0.0);
+    assertEquals(1.0, samples.get("net_servers_connections", "2001:db8:1:2:0:0:0:0/64"), 0.0);
+    assertEquals(1.0, samples.get("net_servers_connections", "example.com"), 0.0);
+  }
+
+  private PrometheusTCPMetrics topKMetrics(int topK, TestClock clock) {
+    DropwizardMetricsOptions options = new DropwizardMetricsOptions()
+      .setRemoteLabelStrategy(RemoteLabelStrategy.TOP_K)
+      .setRemoteLabelTopK(topK);
+    RemoteLabeler remoteLabeler = RemoteLabeler.server(options);
+    remoteLabeler.clock = clock;
+    return new PrometheusTCPMetrics(registry, "net_servers", TestRegistry.globalLabels("local", "localhost:8080"),
+      options, Collections.emptyList(), remoteLabeler);
+  }
+
+  private void connect(PrometheusTCPMetrics metrics, String host, int times) {
+    for (int i = 0; i < times; i++) {
+      SocketAddress remote = SocketAddress.inetSocketAddress(5000 + i, host);
+      SocketMetric socketMetric = metrics.connected(remote, "remote");
+      metrics.bytesRead(socketMetric, remote, 100);
+    }
+  }
+
+  @Test
+  public void testTopKRemoteLabel() {
+    TestClock clock = new TestClock();
+    PrometheusTCPMetrics metrics = topKMetrics(2, clock);
+    connect(metrics, "10.0.0.1", 20);
+    connect(metrics, "10.0.0.2", 10);
+    connect(metrics, "10.0.0.3", 5);
+    // No snapshot yet
+    assertEquals(35.0, samples.get("net_servers_connections", Matcher.OTHER), 0.0);
+    clock.advance(TimeUnit.NANOSECONDS.toMillis(RemoteLabeler.TOP_HOSTS_INTERVAL));
+    connect(metrics, "10.0.0.1", 1);
+    connect(metrics, "10.0.0.2", 1);
+    connect(metrics, "10.0.0.3", 1);
+    connect(metrics, "10.0.0.4", 1);
+    assertEquals(1.0, samples.get("net_servers_connections", "10.0.0.1"), 0.0);
+    assertEquals(1.0, samples.get("net_servers_connections", "10.0.0.2"), 0.0);
+    // Below the minimum connections
+    assertNull(samples.get("net_servers_connections", "10.0.0.3"));
+    assertEquals(37.0, samples.get("net_servers_connections", Matcher.OTHER), 0.0);
+  }
+
+  @Test
+  public void testTopKRemoteLabelUnderChurn() {
+    int topK = 3;
+    TestClock clock = new TestClock();
+    PrometheusTCPMetrics metrics = topKMetrics(topK, clock);
+    for (int i = 0; i < 10 * topK; i++) {
+      connect(metrics, "10.0.1." + i, 2);
+      connect(metrics, "10.0.0.1", 5);
+      if (i % 5 == 4) {
+        clock.advance(TimeUnit.NANOSECONDS.toMillis(RemoteLabeler.TOP_HOSTS_INTERVAL));
+      }
+    }
+    Set<String> remotes = new HashSet<>();
+    for (Collector.MetricFamilySamples family : Collections.list(registry.metricFamilySamples())) {
+      for (Collector.MetricFamilySamples.Sample sample : family.samples) {
+        int index = sample.labelNames.indexOf("remote");
+        if (index >= 0) {
+          remotes.add(sample.labelValues.get(index));
+        }
+      }
+    }
+    assertTrue(remotes.toString(), remotes.size() <= topK + 1);
+    assertEquals(new HashSet<>(Arrays.asList("10.0.0.1", Matcher.OTHER)), remotes);
+  }
+
+  @Test
+  public void testNoRemoteLabel() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080",
+      new DropwizardMetricsOptions().setRemoteLabelStrategy(RemoteLabelStrategy.NONE));
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "10.0.0.1"), "remote");
+    metrics.connected(SocketAddress.inetSocketAddress(5000, "10.0.0.2"), "remote");
+    assertEquals(2.0, samples.get("net_servers_connections", ""), 0.0);
+  }
+
+  @Test
+  public void testAggregateBytesPerConnection() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080",
+      new DropwizardMetricsOptions().setAggregateBytesPerConnection(true));
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketMetric socketMetric = metrics.connected(remote, "remote");
+    metrics.bytesRead(socketMetric, remote, 100);
+    metrics.bytesRead(socketMetric, remote, 50);
+    metrics.bytesWritten(socketMetric, remote, 10);
+    assertEquals(0.0, samples.get("net_servers_bytes_read_count", REMOTE), 0.0);
+    assertEquals(0.0, samples.get("net_servers_bytes_read_total", REMOTE), 0.0);
+    metrics.disconnected(socketMetric, remote);
+    assertEquals(150.0, samples.get("net_servers_bytes_read_sum", REMOTE), 0.0);
+    assertEquals(1.0, samples.get("net_servers_bytes_read_count", REMOTE), 0.0);
+    assertEquals(10.0, samples.get("net_servers_bytes_written_sum", REMOTE), 0.0);
+    assertEquals(1.0, samples.get("net_servers_bytes_written_count", REMOTE), 0.0);
+    assertEquals(150.0, samples.get("net_servers_bytes_read_total", REMOTE), 0.0);
+    assertEquals(10.0, samples.get("net_servers_bytes_written_total", REMOTE), 0.0);
+    assertNull(samples.get("net_servers_connections", REMOTE));
+  }
+
+  @Test
+  public void testAggregateBytesWrittenFromSeveralThreads() throws Exception {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", new DropwizardMetricsOptions()
+      .setAggregateBytesPerConnection(true)
+      .setRemoteLabelStrategy(RemoteLabelStrategy.HOST));
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketMetric socketMetric = metrics.connected(remote, "remote");
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 100_000; j++) {
+          metrics.bytesWritten(socketMetric, remote, 1);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    metrics.disconnected(socketMetric, remote);
+    assertEquals(400_000.0, samples.get("net_servers_bytes_written_total", "10.0.0.1"), 0.0);
+  }
+
+  @Test
+  public void testClosedMetrics() {
+    PrometheusTCPMetrics metrics = registry.netServerMetrics("localhost:8080", new DropwizardMetricsOptions());
+    metrics.close();
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketMetric socketMetric = metrics.connected(remote, "remote");
+    assertNull(socketMetric);
+    metrics.bytesRead(socketMetric, remote, 100);
+    metrics.disconnected(socketMetric, remote);
+    assertNull(samples.get("net_servers_connections", REMOTE));
+  }
+
+  @Test
+  public void testUriLabelIgnoresQuery() {
+    PrometheusTCPMetrics metrics = new PrometheusTCPMetrics(registry, "http_servers",
+      TestRegistry.globalLabels("local", "localhost:8080"), new DropwizardMetricsOptions(), Arrays.asList(
+        new Match().setValue("/api/items"),
+        new Match().setValue("/api/items/[0-9]+").setType(MatchType.REGEX).setAlias("item")),
+      RemoteLabeler.server(new DropwizardMetricsOptions()));
+    metrics.responseEnd(metrics.createRequestMetric("GET", "/api/items?x=1", null), 200);
+    metrics.responseEnd(metrics.createRequestMetric("GET", "/api/items/12?x=/api/items", null), 200);
+    metrics.responseEnd(metrics.createRequestMetric("GET", "/api/other?x=1", null), 200);
+    TestRegistry.Samples requests = registry.samples(new String[]{"local", "method", "uri"}, "localhost:8080", "GET");
+    assertEquals(1.0, requests.get("http_servers_requests_count", "/api/items"), 0.0);
+    assertEquals(1.0, requests.get("http_servers_requests_count", "item"), 0.0);
+    assertEquals(1.0, requests.get("http_servers_requests_count", Matcher.OTHER), 0.0);
+  }
+}
@@ -0,0 +1,32 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class ScrapeChunksTest {
+
+  @Test
+  public void testReleaseBefore() {
+    ScrapeChunks chunks = new ScrapeChunks();
+    for (int i = 0; i < 4; i++) {
+      chunks.add(Buffer.buffer("chunk-" + i));
+    }
+    chunks.releaseBefore(2);
+    // Still indexed from the first chunk
+    assertEquals(4, chunks.size());
+    assertEquals("chunk-2", chunks.get(2).toString());
+    assertEquals("chunk-3", chunks.get(3).toString());
+    chunks.releaseBefore(1);
+    assertEquals("chunk-2", chunks.get(2).toString());
+    chunks.add(Buffer.buffer("chunk-4"));
+    chunks.releaseBefore(5);
+    assertEquals(5, chunks.size());
+    chunks.add(Buffer.buffer("chunk-5"));
+    assertEquals("chunk-5", chunks.get(5).toString());
+  }
+}
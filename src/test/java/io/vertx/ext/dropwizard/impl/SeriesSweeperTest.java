@@ -0,0 +1,64 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+import io.vertx.ext.dropwizard.RemoteLabelStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class SeriesSweeperTest {
+
+  private static final String[] LABELS = {"local", "remote"};
+
+  private TestRegistry.Samples samples;
+  private SeriesSweeper sweeper;
+  private PrometheusTCPMetrics metrics;
+
+  @Before
+  public void setUp() {
+    TestRegistry registry = new TestRegistry();
+    samples = registry.samples(LABELS, "localhost:8080");
+    // Swept by hand, the sweeper is never started
+    sweeper = new SeriesSweeper(null, 100);
+    metrics = registry.netServerMetrics("localhost:8080",
+      new DropwizardMetricsOptions().setRemoteLabelStrategy(RemoteLabelStrategy.HOST));
+    metrics.sweptBy(sweeper);
+  }
+
+  @Test
+  public void testIdleSeriesExpire() {
+    SocketAddress remote1 = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    SocketAddress remote2 = SocketAddress.inetSocketAddress(5000, "10.0.0.2");
+    SocketMetric socketMetric1 = metrics.connected(remote1, "remote");
+    SocketMetric socketMetric2 = metrics.connected(remote2, "remote");
+    metrics.bytesRead(socketMetric1, remote1, 100);
+    metrics.bytesRead(socketMetric2, remote2, 100);
+    metrics.disconnected(socketMetric2, remote2);
+    assertEquals(0, sweeper.sweep(0));
+    assertEquals(0, sweeper.sweep(60));
+    assertEquals(100.0, samples.get("net_servers_bytes_read_sum", "10.0.0.2"), 0.0);
+    // bytes_read and bytes_written of the closed connection expire, the open one keeps its series
+    assertEquals(2, sweeper.sweep(120));
+    assertNull(samples.get("net_servers_bytes_read_sum", "10.0.0.2"));
+    assertEquals(100.0, samples.get("net_servers_bytes_read_sum", "10.0.0.1"), 0.0);
+    assertEquals(1.0, samples.get("net_servers_connections", "10.0.0.1"), 0.0);
+    metrics.disconnected(socketMetric1, remote1);
+    // Already idle for long enough
+    assertEquals(2, sweeper.sweep(130));
+    assertNull(samples.get("net_servers_bytes_read_sum", "10.0.0.1"));
+  }
+
+  @Test
+  public void testClosedMetricsAreNotSwept() {
+    SocketAddress remote = SocketAddress.inetSocketAddress(5000, "10.0.0.1");
+    metrics.bytesRead(metrics.connected(remote, "remote"), remote, 100);
+    metrics.close();
+    assertEquals(0, sweeper.sweep(0));
+    assertEquals(0, sweeper.sweep(1000));
+  }
+}
@@ -0,0 +1,23 @@
+package io.vertx.ext.dropwizard.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock only moving forward when the test advances it, so that the measured durations are known.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class TestClock implements Clock {
+
+  // Not zero, which the metrics take for a time never recorded
+  private volatile long time = TimeUnit.SECONDS.toNanos(1);
+
+  @Override
+  public long nanoTime() {
+    return time;
+  }
+
+  void advance(long millis) {
+    time += TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
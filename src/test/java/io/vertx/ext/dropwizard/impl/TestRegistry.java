@@ -0,0 +1,79 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+/**
+ * The registry of the tests of the metrics objects, with the factories of these objects and the lookup of samples.
+ *
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+class TestRegistry extends CollectorRegistry {
+
+  /**
+   * @param namesAndValues the name and the value of each global label
+   */
+  static LinkedHashMap<String, String> globalLabels(String... namesAndValues) {
+    LinkedHashMap<String, String> globalLabels = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      globalLabels.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return globalLabels;
+  }
+
+  /**
+   * @return the metrics of a net server listening on {@code local}, named {@code net_servers}
+   */
+  PrometheusTCPMetrics netServerMetrics(String local, DropwizardMetricsOptions options) {
+    return new PrometheusTCPMetrics(this, "net_servers", globalLabels("local", local), options, Collections.emptyList(),
+      RemoteLabeler.server(options));
+  }
+
+  /**
+   * @return a metrics object without global labels, to create families from
+   */
+  AbstractMetrics metrics(String baseName) {
+    return new AbstractMetrics(this, baseName, new LinkedHashMap<>(), new DropwizardMetricsOptions()) {
+      @Override
+      public void close() {
+        removeAll();
+      }
+    };
+  }
+
+  /**
+   * @param labelNames the names of all the labels of the samples
+   * @param values the values of the first labels, shared by all the samples
+   */
+  Samples samples(String[] labelNames, String... values) {
+    return new Samples(labelNames, values);
+  }
+
+  /**
+   * The samples having the same label names.
+   */
+  class Samples {
+
+    private final String[] labelNames;
+    private final String[] values;
+
+    private Samples(String[] labelNames, String[] values) {
+      this.labelNames = labelNames;
+      this.values = values;
+    }
+
+    /**
+     * @param values the values of the labels following the shared ones
+     * @return the value of the sample, or {@code null} if there is none
+     */
+    Double get(String name, String... values) {
+      String[] labelValues = new String[this.values.length + values.length];
+      System.arraycopy(this.values, 0, labelValues, 0, this.values.length);
+      System.arraycopy(values, 0, labelValues, this.values.length, values.length);
+      return getSampleValue(name, labelNames, labelValues);
+    }
+  }
+}
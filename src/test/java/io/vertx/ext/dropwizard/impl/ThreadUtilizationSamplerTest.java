@@ -0,0 +1,123 @@
+package io.vertx.ext.dropwizard.impl;
+
+import io.vertx.core.Vertx;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:jtakvori@redhat.com">Joel Takvorian</a>
+ */
+public class ThreadUtilizationSamplerTest {
+
+  private static final String[] LABELS = {"pool", "thread"};
+
+  private AbstractMetrics metrics;
+  private TestRegistry.Samples samples;
+  private ThreadUtilizationSampler sampler;
+
+  @Before
+  public void setUp() {
+    TestRegistry registry = new TestRegistry();
+    samples = registry.samples(LABELS);
+    metrics = registry.metrics("vertx");
+    sampler = new ThreadUtilizationSampler(null, 1000,
+      metrics.counter("thread_cpu_seconds_total", "pool", "thread"),
+      metrics.gauge("thread_utilization", "pool", "thread"));
+    sampler.addPool("my-pool");
+  }
+
+  private static void spin(long millis) {
+    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    while (System.nanoTime() < end) {
+      // Busy
+    }
+  }
+
+  @Test
+  public void testSampleThreads() throws Exception {
+    CountDownLatch busy = new CountDownLatch(1);
+    CountDownLatch spun = new CountDownLatch(1);
+    CountDownLatch sampled = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    Thread busyThread = new Thread(() -> {
+      try {
+        busy.await();
+        spin(50);
+        spun.countDown();
+        sampled.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "my-pool-0");
+    Thread idleThread = new Thread(() -> {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, ThreadUtilizationSampler.EVENT_LOOP_POOL + "-0");
+    Thread ignoredThread = new Thread(() -> {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "my-pool");
+    busyThread.start();
+    idleThread.start();
+    ignoredThread.start();
+    try {
+      // Sampled at known times, a second apart, the utilization is the CPU time of the interval
+      long now = TimeUnit.SECONDS.toNanos(1);
+      sampler.sample(now);
+      assertNull(samples.get("vertx_thread_utilization", "my-pool", "my-pool-0"));
+      busy.countDown();
+      spun.await(10, TimeUnit.SECONDS);
+      sampler.sample(now += TimeUnit.SECONDS.toNanos(1));
+      double cpuSeconds = samples.get("vertx_thread_cpu_seconds_total", "my-pool", "my-pool-0");
+      assertTrue(cpuSeconds > 0);
+      assertEquals(cpuSeconds, samples.get("vertx_thread_utilization", "my-pool", "my-pool-0"), 1E-9);
+      assertTrue(samples.get("vertx_thread_utilization", "vert.x-eventloop-thread", "vert.x-eventloop-thread-0") < 0.1);
+      assertNull(samples.get("vertx_thread_utilization", "my-pool", "my-pool"));
+      sampled.countDown();
+      busyThread.join();
+      sampler.sample(now + TimeUnit.SECONDS.toNanos(1));
+      assertNull(samples.get("vertx_thread_cpu_seconds_total", "my-pool", "my-pool-0"));
+      assertNull(samples.get("vertx_thread_utilization", "my-pool", "my-pool-0"));
+      assertNotNull(samples.get("vertx_thread_utilization", "vert.x-eventloop-thread", "vert.x-eventloop-thread-0"));
+    } finally {
+      busy.countDown();
+      sampled.countDown();
+      done.countDown();
+    }
+  }
+
+  @Test
+  public void testSampleOffTheEventLoop() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    CompletableFuture<String> sampled = new CompletableFuture<>();
+    ThreadUtilizationSampler sampler = new ThreadUtilizationSampler(vertx, 1000,
+      metrics.counter("thread_cpu_seconds_total", "pool", "thread"),
+      metrics.gauge("thread_utilization", "pool", "thread")) {
+      @Override
+      synchronized void sample(long now) {
+        sampled.complete(Thread.currentThread().getName());
+      }
+    };
+    try {
+      vertx.runOnContext(v -> sampler.start());
+      assertTrue(sampled.get(10, TimeUnit.SECONDS).startsWith("vert.x-worker-thread-"));
+    } finally {
+      sampler.close();
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(10, TimeUnit.SECONDS);
+    }
+  }
+}